@@ -7,6 +7,7 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
 import javax.imageio.ImageIO;
 import java.net.URL;
@@ -14,6 +15,7 @@ import java.awt.Taskbar;
 
 import uk.ac.cam.jml229.logic.components.Component;
 import uk.ac.cam.jml229.logic.components.CustomComponent;
+import uk.ac.cam.jml229.logic.core.Circuit;
 import uk.ac.cam.jml229.logic.core.Wire;
 import uk.ac.cam.jml229.logic.io.SettingsManager;
 import uk.ac.cam.jml229.logic.io.StorageManager;
@@ -102,8 +104,12 @@ public class GuiMain {
       // --- Simulation Controller ---
       simController = new SimulationController(circuitPanel.getCircuit(), () -> {
         circuitPanel.repaint();
-        timingContainer.tick();
-      });
+        timingContainer.tick(simController.getSnapshot());
+        if (appMenuBar != null)
+          appMenuBar.updateSimStats(simController.getTicksPerSecond(), simController.getEventsPerSecond());
+      }, circuitPanel::repaint);
+      renderer.setSignalSource(simController::getSnapshot);
+      interaction.setEditor(simController::edit);
       simController.start();
 
       circuitPanel.setOnCircuitChanged(newCircuit -> simController.setCircuit(newCircuit));
@@ -319,7 +325,11 @@ public class GuiMain {
         file = new File(file.getAbsolutePath() + ".lgk");
       try {
         List<Component> tools = palette.getCustomPrototypes();
-        StorageManager.save(file, circuitPanel.getInteraction().getCircuit(), tools);
+        Circuit circuit = circuitPanel.getInteraction().getCircuit();
+        // Serialise between simulation steps, write from here
+        String[] data = new String[1];
+        simController.edit(() -> data[0] = StorageManager.saveToString(circuit, tools));
+        Files.writeString(file.toPath(), data[0]);
         JOptionPane.showMessageDialog(frame, "Saved successfully!");
       } catch (IOException ex) {
         JOptionPane.showMessageDialog(frame, "Error saving: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
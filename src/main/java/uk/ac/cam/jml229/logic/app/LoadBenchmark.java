@@ -0,0 +1,112 @@
+package uk.ac.cam.jml229.logic.app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.gates.AndGate;
+import uk.ac.cam.jml229.logic.components.gates.NandGate;
+import uk.ac.cam.jml229.logic.components.gates.OrGate;
+import uk.ac.cam.jml229.logic.components.gates.XorGate;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.core.Circuit;
+import uk.ac.cam.jml229.logic.io.StorageManager;
+
+/**
+ * Times loading, building and tearing down random gate circuits of
+ * 1k, 10k and 100k components, to keep structural edits near O(degree).
+ * "settle" is the simulation needed after a load before every signal is
+ * consistent.
+ * Each gate takes both inputs from earlier components, so the circuits
+ * are acyclic with an average fan-out of two.
+ *
+ * Usage: LoadBenchmark [SIZE...]
+ */
+public class LoadBenchmark {
+
+  private static final int[] DEFAULT_SIZES = { 1_000, 10_000, 100_000 };
+  private static final int SWITCHES = 16;
+  private static final int RUNS = 3;
+
+  public static void main(String[] args) throws IOException {
+    System.setProperty("java.awt.headless", "true");
+
+    int[] sizes = DEFAULT_SIZES;
+    if (args.length > 0) {
+      sizes = new int[args.length];
+      for (int i = 0; i < args.length; i++)
+        sizes[i] = Integer.parseInt(args[i]);
+    }
+
+    // Warm the JIT up on a small circuit first
+    String warm = StorageManager.saveToString(build(2_000, new Random(1)), null);
+    for (int i = 0; i < 5; i++)
+      StorageManager.loadFromString(warm);
+
+    System.out.printf("%10s %8s %10s %10s %10s %10s%n", "components", "wires", "build ms", "load ms", "settle ms",
+        "remove ms");
+    for (int size : sizes) {
+      long build = Long.MAX_VALUE;
+      long load = Long.MAX_VALUE;
+      long settle = Long.MAX_VALUE;
+      long remove = Long.MAX_VALUE;
+      int wires = 0;
+      for (int run = 0; run < RUNS; run++) {
+        long start = System.nanoTime();
+        Circuit built = build(size, new Random(42));
+        build = Math.min(build, System.nanoTime() - start);
+
+        String data = StorageManager.saveToString(built, null);
+        start = System.nanoTime();
+        Circuit loaded = StorageManager.loadFromString(data).circuit();
+        load = Math.min(load, System.nanoTime() - start);
+        wires = loaded.getWires().size();
+
+        start = System.nanoTime();
+        loaded.getSimulator().runUntilStable(Long.MAX_VALUE);
+        settle = Math.min(settle, System.nanoTime() - start);
+
+        // Delete in random order, as a user clearing a selection would
+        List<Component> doomed = new ArrayList<>(loaded.getComponents());
+        Collections.shuffle(doomed, new Random(7));
+        start = System.nanoTime();
+        loaded.transaction(() -> {
+          for (Component c : doomed)
+            loaded.removeComponent(c);
+        });
+        remove = Math.min(remove, System.nanoTime() - start);
+      }
+      System.out.printf("%10d %8d %10.1f %10.1f %10.1f %10.1f%n", size, wires,
+          build / 1e6, load / 1e6, settle / 1e6, remove / 1e6);
+    }
+  }
+
+  private static Circuit build(int size, Random random) {
+    Circuit circuit = new Circuit();
+    List<Component> placed = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      Component c;
+      if (i < SWITCHES) {
+        c = new Switch("S" + i);
+      } else {
+        c = switch (random.nextInt(4)) {
+          case 0 -> new AndGate("AND");
+          case 1 -> new OrGate("OR");
+          case 2 -> new XorGate("XOR");
+          default -> new NandGate("NAND");
+        };
+      }
+      c.setPosition((i % 100) * 60, (i / 100) * 60);
+      circuit.addComponent(c);
+      if (i >= SWITCHES) {
+        circuit.addConnection(placed.get(random.nextInt(i)), c, 0);
+        circuit.addConnection(placed.get(random.nextInt(i)), c, 1);
+      }
+      placed.add(c);
+    }
+    return circuit;
+  }
+}
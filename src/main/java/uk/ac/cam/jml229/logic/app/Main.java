@@ -1,52 +1,349 @@
 package uk.ac.cam.jml229.logic.app;
 
-import uk.ac.cam.jml229.logic.components.*;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.core.ActivityProfile;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
 import uk.ac.cam.jml229.logic.core.Wire;
-import uk.ac.cam.jml229.logic.components.gates.*;
-import uk.ac.cam.jml229.logic.components.io.*;
-import uk.ac.cam.jml229.logic.components.seq.*;
+import uk.ac.cam.jml229.logic.core.Simulator.RunResult;
+import uk.ac.cam.jml229.logic.core.netlist.TruthTable;
+import uk.ac.cam.jml229.logic.headless.HeadlessSession;
+import uk.ac.cam.jml229.logic.headless.HeadlessSession.Engine;
+import uk.ac.cam.jml229.logic.headless.Testbench;
 
+/**
+ * Headless batch runner for regressions on machines without a display.
+ * Loads a .logik file, then runs the commands on the command line in
+ * order: set Switches, run or settle, toggle clocks and print the
+ * OutputProbes (as text or CSV), stream a Testbench stimulus file,
+ * export the truth table or report which nets are busiest.
+ * See usage() for the syntax.
+ *
+ * Exit status: 0 on success, 1 for bad arguments or files, 2 if the
+ * circuit did not settle within the limit, 3 if a testbench vector failed.
+ */
 public class Main {
+
+  private static final int EXIT_USAGE = 1;
+  private static final int EXIT_UNSTABLE = 2;
+  private static final int EXIT_MISMATCH = 3;
+
+  private static final int DEFAULT_ACTIVITY_ROWS = 10;
+
+  private SimulationConfig config = SimulationConfig.DEFAULTS;
+  private Engine engine = Engine.OBJECT;
+  private int partitions = 0; // 0 = PartitionedSimulator's default
+  private long limit = HeadlessSession.DEFAULT_SETTLE_LIMIT;
+  private List<String> probeNames = null;
+  private String csvPath = null;
+  private File file = null;
+  private final List<String> commands = new ArrayList<>();
+
+  private HeadlessSession session;
+  private PrintStream csv = null;
+
   public static void main(String[] args) {
-    // 1. Create Components
-    Switch swA = new Switch("Switch A");
-    Switch swB = new Switch("Switch B");
-
-    XorGate xor = new XorGate("XOR");
-    AndGate and = new AndGate("AND");
-
-    OutputProbe sumLight = new OutputProbe("Sum (Light)");
-    OutputProbe carryLight = new OutputProbe("Carry (Light)");
-
-    // 2. Wire them up (The "Netlist")
-    // Connect Switch A -> XOR(0) and AND(0)
-    Wire wireA = new Wire(swA);
-    wireA.addDestination(xor, 0);
-    wireA.addDestination(and, 0);
-
-    // Connect Switch B -> XOR(1) and AND(1)
-    Wire wireB = new Wire(swB);
-    wireB.addDestination(xor, 1);
-    wireB.addDestination(and, 1);
-
-    // Connect XOR -> Sum Light
-    Wire wireSum = new Wire(xor);
-    wireSum.addDestination(sumLight, 0);
-
-    // Connect AND -> Carry Light
-    Wire wireCarry = new Wire(and);
-    wireCarry.addDestination(carryLight, 0);
-
-    // 3. Run Simulation
-    System.out.println("--- Test 1: 0 + 0 ---");
-    swA.toggle(false);
-    swB.toggle(false);
-
-    System.out.println("\n--- Test 2: 1 + 0 ---");
-    swA.toggle(true);
-
-    System.out.println("\n--- Test 3: 1 + 1 ---");
-    swB.toggle(true);
-    // Expected: Sum OFF, Carry ON
+    // Never let anything pull in a display connection
+    System.setProperty("java.awt.headless", "true");
+
+    Main main = new Main();
+    int status;
+    try {
+      main.parse(args);
+      status = main.execute();
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: " + e.getMessage());
+      status = EXIT_USAGE;
+    } catch (IOException e) {
+      System.err.println("Cannot load circuit: " + e.getMessage());
+      status = EXIT_USAGE;
+    }
+    System.exit(status);
+  }
+
+  private void parse(String[] args) {
+    int i = 0;
+    for (; i < args.length && args[i].startsWith("--"); i++) {
+      switch (args[i]) {
+        case "--delay" -> config = new SimulationConfig(true, (int) parseCount(value(args, ++i), "--delay"));
+        case "--no-delay" -> config = config.withPropagationDelayEnabled(false);
+        case "--limit" -> limit = parseCount(value(args, ++i), "--limit");
+        case "--probes" -> probeNames = List.of(value(args, ++i).split(","));
+        case "--csv" -> csvPath = value(args, ++i);
+        case "--engine" -> parseEngine(value(args, ++i));
+        case "--help" -> throw new IllegalArgumentException(usage());
+        default -> throw new IllegalArgumentException("Unknown option " + args[i] + "\n" + usage());
+      }
+    }
+    if (i >= args.length)
+      throw new IllegalArgumentException("No circuit file given\n" + usage());
+    file = new File(args[i++]);
+    for (; i < args.length; i++)
+      commands.add(args[i]);
+    if (commands.isEmpty())
+      commands.addAll(List.of("settle", "print"));
+  }
+
+  private int execute() throws IOException {
+    session = HeadlessSession.load(file, config, engine, partitions);
+    if (probeNames == null)
+      probeNames = session.getProbeNames();
+    for (String name : probeNames)
+      session.probeNamed(name); // Fail fast on a typo
+
+    try {
+      if (csvPath != null)
+        openCsv();
+      for (int i = 0; i < commands.size(); i++) {
+        String cmd = commands.get(i);
+        String arg = (i + 1 < commands.size()) ? commands.get(i + 1) : null;
+        switch (cmd) {
+          case "set" -> {
+            applySettings(require(arg, cmd));
+            i++;
+          }
+          case "run" -> {
+            session.runFor(parseCount(require(arg, cmd), cmd));
+            i++;
+          }
+          case "settle" -> {
+            if (!settle())
+              return EXIT_UNSTABLE;
+          }
+          case "clock" -> {
+            int n = 1;
+            if (arg != null && arg.chars().allMatch(Character::isDigit)) {
+              n = (int) parseCount(arg, cmd);
+              i++;
+            }
+            for (int k = 0; k < n; k++) {
+              session.tickClocks();
+              if (!settle())
+                return EXIT_UNSTABLE;
+            }
+          }
+          case "print" -> sample();
+          case "profile" -> {
+            if (engine != Engine.OBJECT)
+              throw new IllegalArgumentException("'profile' needs --engine object");
+            session.setProfiling(true);
+          }
+          case "activity" -> {
+            int n = DEFAULT_ACTIVITY_ROWS;
+            if (arg != null && arg.chars().allMatch(Character::isDigit)) {
+              n = (int) parseCount(arg, cmd);
+              i++;
+            }
+            printActivity(n);
+          }
+          case "table" -> {
+            writeTable(require(arg, cmd));
+            i++;
+          }
+          case "test" -> {
+            int status = test(require(arg, cmd));
+            if (status != 0)
+              return status;
+            i++;
+          }
+          default -> throw new IllegalArgumentException("Unknown command '" + cmd + "'\n" + usage());
+        }
+      }
+    } finally {
+      if (csv != null && csv != System.out)
+        csv.close();
+      else if (csv != null)
+        csv.flush();
+      session.close();
+    }
+    return 0;
+  }
+
+  private boolean settle() {
+    RunResult r = session.run(limit);
+    if (!r.stable())
+      System.err.println("Circuit did not settle within " + limit + " ticks (tick " + session.getTick() + ")");
+    return r.stable();
+  }
+
+  private int test(String path) throws IOException {
+    Testbench bench = new Testbench(session, limit);
+    Testbench.Report r;
+    try (Reader in = path.equals("-") ? new InputStreamReader(System.in) : new FileReader(path)) {
+      r = bench.run(in, m -> System.out.println("MISMATCH " + m));
+    }
+    System.out.printf("%s: %d vectors, %d failed (%d mismatches), %d unsettled, %d ticks, %.0f vectors/s%n",
+        path, r.vectors(), r.failedVectors(), r.mismatches(), r.unsettled(), r.ticks(), r.vectorsPerSecond());
+    if (r.unsettled() > 0)
+      return EXIT_UNSTABLE;
+    return r.passed() ? 0 : EXIT_MISMATCH;
+  }
+
+  private void writeTable(String path) throws IOException {
+    session.syncToCircuit();
+    TruthTable tt = TruthTable.of(session.getCircuit());
+    if (path.equals("-")) {
+      tt.writeCsv(new BufferedWriter(new OutputStreamWriter(System.out))); // Flushed, not closed
+    } else {
+      try (Writer out = new BufferedWriter(new FileWriter(path))) {
+        tt.writeCsv(out);
+      }
+    }
+    if (!tt.isSettled())
+      System.err.println("Warning: some input combinations did not settle");
+  }
+
+  private void printActivity(int rows) {
+    ActivityProfile p = session.getProfile();
+    if (p == null)
+      throw new IllegalArgumentException("'activity' needs an earlier 'profile' command");
+    long ticks = Math.max(1, session.getTick() - p.getStartTick());
+
+    // Names aren't unique, so label components by position in the file too
+    Map<Component, Integer> index = new IdentityHashMap<>();
+    List<Component> all = session.getCircuit().getComponents();
+    for (int i = 0; i < all.size(); i++)
+      index.put(all.get(i), i);
+
+    System.out.printf("Activity over %d ticks: %d toggles, %d evaluations%n",
+        ticks, p.getTotalToggles(), p.getTotalEvaluations());
+    System.out.println("   toggles  per tick  net");
+    List<Wire> nets = new ArrayList<>(p.getWires());
+    nets.sort(Comparator.comparingLong(p::getToggles).reversed());
+    for (Wire w : nets.subList(0, Math.min(rows, nets.size()))) {
+      Component src = w.getSource();
+      int out = 0;
+      while (out < src.getOutputCount() && src.getOutputWire(out) != w)
+        out++;
+      System.out.printf("%10d %9.4f  %s.%d%n", p.getToggles(w), (double) p.getToggles(w) / ticks,
+          label(src, index), out);
+    }
+    System.out.println("     evals  per tick  component");
+    List<Component> comps = new ArrayList<>(p.getComponents());
+    comps.sort(Comparator.comparingLong(p::getEvaluations).reversed());
+    for (Component c : comps.subList(0, Math.min(rows, comps.size()))) {
+      System.out.printf("%10d %9.4f  %s%n", p.getEvaluations(c), (double) p.getEvaluations(c) / ticks,
+          label(c, index));
+    }
+  }
+
+  private static String label(Component c, Map<Component, Integer> index) {
+    Integer i = index.get(c);
+    return (i == null) ? c.getName() : c.getName() + "#" + i;
+  }
+
+  private void applySettings(String list) {
+    for (String item : list.split(",")) {
+      int eq = item.indexOf('=');
+      if (eq <= 0)
+        throw new IllegalArgumentException("Expected NAME=0|1 but got '" + item + "'");
+      session.set(item.substring(0, eq), parseBit(item.substring(eq + 1)));
+    }
+  }
+
+  private void openCsv() throws FileNotFoundException {
+    csv = csvPath.equals("-") ? System.out : new PrintStream(csvPath);
+    csv.println("tick," + String.join(",", probeNames));
+  }
+
+  private void sample() {
+    StringBuilder sb = new StringBuilder();
+    if (csv != null) {
+      sb.append(session.getTick());
+      for (String name : probeNames)
+        sb.append(',').append(session.read(name) ? 1 : 0);
+      csv.println(sb);
+    } else {
+      sb.append('@').append(session.getTick());
+      for (String name : probeNames)
+        sb.append(' ').append(name).append('=').append(session.read(name) ? 1 : 0);
+      System.out.println(sb);
+    }
+  }
+
+  // --- Parsing Helpers ---
+
+  private static String value(String[] args, int i) {
+    if (i >= args.length)
+      throw new IllegalArgumentException(args[i - 1] + " needs a value");
+    return args[i];
+  }
+
+  private static String require(String arg, String cmd) {
+    if (arg == null)
+      throw new IllegalArgumentException("'" + cmd + "' needs an argument");
+    return arg;
+  }
+
+  private static long parseCount(String s, String what) {
+    try {
+      long n = Long.parseLong(s);
+      if (n >= 0)
+        return n;
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new IllegalArgumentException(what + " expects a non-negative number, got '" + s + "'");
+  }
+
+  // object, netlist, partitioned or partitioned=N
+  private void parseEngine(String s) {
+    String name = s;
+    if (s.startsWith("partitioned=")) {
+      name = "partitioned";
+      partitions = (int) Math.min(Integer.MAX_VALUE, parseCount(s.substring(name.length() + 1), "--engine partitioned="));
+    }
+    engine = switch (name) {
+      case "object" -> Engine.OBJECT;
+      case "netlist" -> Engine.NETLIST;
+      case "partitioned" -> Engine.PARTITIONED;
+      default -> throw new IllegalArgumentException("--engine expects object, netlist or partitioned[=N], got '" + s + "'");
+    };
+  }
+
+  private static boolean parseBit(String s) {
+    return switch (s) {
+      case "1", "true", "on", "high" -> true;
+      case "0", "false", "off", "low" -> false;
+      default -> throw new IllegalArgumentException("Expected 0 or 1 but got '" + s + "'");
+    };
+  }
+
+  private static String usage() {
+    return """
+        Usage: Main [options] FILE.logik [commands...]
+          --delay N      propagation delay on, N ticks per gate (default 1)
+          --no-delay     propagation delay off
+          --limit N      tick limit for settle (default 1000000)
+          --probes A,B   only sample these probes
+          --csv FILE     record samples as CSV ("-" for stdout)
+          --engine E     object (default), netlist or partitioned[=N]: the
+                         compiled ones are faster but have no timed clocks
+                         or profiling; partitioned splits the netlist over
+                         N threads (default: one per core, for big circuits)
+        Commands (default: settle print):
+          set NAME=0|1[,NAME=0|1...]   run N   settle   clock [N]   print
+          (run N simulates N ticks including timed clock edges; settle stops
+           once the logic is quiet; clock toggles clocks without a period)
+          test STIMULUS                stream a testbench file ("-" for stdin)
+          profile                      start counting net toggles and evaluations
+          activity [N]                 print the N busiest nets and components (default 10)
+          table CSV                    export every input combination ("-" for stdout)""";
   }
 }
@@ -0,0 +1,215 @@
+package uk.ac.cam.jml229.logic.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import uk.ac.cam.jml229.logic.components.io.OutputProbe;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.components.seq.Clock;
+import uk.ac.cam.jml229.logic.core.Circuit;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
+import uk.ac.cam.jml229.logic.core.netlist.Netlist;
+import uk.ac.cam.jml229.logic.core.netlist.NetlistState;
+import uk.ac.cam.jml229.logic.core.netlist.TruthTable;
+
+/**
+ * The shared, read-only part of an IC: its layout (components, wires and
+ * waypoints), the netlist compiled from it, and which gates are its pins.
+ * Every CustomComponent placed from the same tool points at one
+ * definition and only carries its own NetlistState.
+ *
+ * A purely combinational chip with at most MAX_LUT_INPUTS inputs also
+ * gets a truth table, built once with TruthTable.generate(), so each
+ * instance update is a single array read.
+ *
+ * The layout circuit is never simulated and must not be edited once the
+ * definition exists.
+ *
+ * Clocks inside a chip are toggled through CustomComponent.tickClocks()
+ * with the rest of the circuit's untimed clocks. A period set on one
+ * before it went into the chip is dropped, so it is neither saved nor
+ * mistaken for one that runs.
+ */
+public final class ChipDefinition {
+
+  // Zero-delay passes allowed before a chip is treated as oscillating
+  static final int MAX_PASSES = 64;
+
+  /** Widest combinational chip that gets a truth table (4096 rows). */
+  public static final int MAX_LUT_INPUTS = 12;
+
+  private final String name;
+  private final Circuit layout;
+  private final List<Switch> inputPins = new ArrayList<>();
+  private final List<OutputProbe> outputPins = new ArrayList<>();
+  private final Netlist netlist;
+  private final int[] inputGates;
+  private final int[] outputGates;
+  final int[] clockGates; // Every CLOCK gate, nested chips included
+  private final NetlistState initialState;
+  final long[] truthTable; // Row = input bits, bit j = output j; null if none
+  private final int[] outputPinOfGate; // -1 unless the gate is an output pin
+
+  // Gate delays resolved for the last config asked about
+  private record Delays(SimulationConfig config, int[] ticks) {
+  }
+
+  private volatile Delays delays;
+
+  /** Copies the template once; later edits to it don't affect the chip. */
+  public ChipDefinition(String name, Circuit template) {
+    this.name = name;
+    this.layout = template.cloneCircuit();
+    for (Component c : layout.getComponents()) {
+      if (c instanceof Clock k && k.isTimed())
+        k.setTiming(0, 0);
+    }
+
+    // Pins are the Switches and probes inside, ordered top to bottom
+    for (Component c : layout.getComponents()) {
+      if (c instanceof Switch s) {
+        inputPins.add(s);
+      } else if (c instanceof OutputProbe p) {
+        outputPins.add(p);
+      }
+    }
+    inputPins.sort((a, b) -> Integer.compare(a.getY(), b.getY()));
+    outputPins.sort((a, b) -> Integer.compare(a.getY(), b.getY()));
+
+    this.netlist = Netlist.compile(layout);
+    this.inputGates = new int[inputPins.size()];
+    for (int i = 0; i < inputGates.length; i++)
+      inputGates[i] = netlist.indexOf(inputPins.get(i));
+    this.outputGates = new int[outputPins.size()];
+    for (int i = 0; i < outputGates.length; i++)
+      outputGates[i] = netlist.indexOf(outputPins.get(i));
+    this.outputPinOfGate = new int[netlist.getGateCount()];
+    Arrays.fill(outputPinOfGate, -1);
+    for (int i = 0; i < outputGates.length; i++)
+      outputPinOfGate[outputGates[i]] = i;
+    this.clockGates = IntStream.range(0, netlist.getGateCount())
+        .filter(g -> netlist.getType(g) == Netlist.CLOCK).toArray();
+
+    // The layout may not have been simulated, so settle it once here
+    this.initialState = new NetlistState(netlist);
+    initialState.settle(MAX_PASSES);
+
+    this.truthTable = isTabulable() ? buildTruthTable() : null;
+  }
+
+  // Combinational (no clocks, flip-flops or loops) and small enough
+  private boolean isTabulable() {
+    if (inputGates.length > MAX_LUT_INPUTS || outputGates.length > 64)
+      return false;
+    if (clockGates.length > 0)
+      return false;
+    for (int g = 0; g < netlist.getGateCount(); g++) {
+      if (Netlist.isFlipFlop(netlist.getType(g)))
+        return false;
+    }
+    return !netlist.hasCombinationalLoop();
+  }
+
+  // Row-major copy of the bit-packed table, so a lookup is one read
+  private long[] buildTruthTable() {
+    TruthTable tt = TruthTable.generate(netlist, inputGates, outputGates,
+        names(inputPins), names(outputPins), ForkJoinPool.commonPool());
+    long[] table = new long[(int) tt.getRowCount()];
+    for (int r = 0; r < table.length; r++)
+      table[r] = tt.getRow(r);
+    return table;
+  }
+
+  private static List<String> names(List<? extends Component> pins) {
+    return pins.stream().map(Component::getName).toList();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** The chip's internals as laid out. Shared by every instance: read only. */
+  public Circuit getLayout() {
+    return layout;
+  }
+
+  public List<Switch> getInputPins() {
+    return Collections.unmodifiableList(inputPins);
+  }
+
+  public List<OutputProbe> getOutputPins() {
+    return Collections.unmodifiableList(outputPins);
+  }
+
+  public int getInputCount() {
+    return inputGates.length;
+  }
+
+  public int getOutputCount() {
+    return outputGates.length;
+  }
+
+  /** True if a Clock sits somewhere inside, so Circuit.tick() must reach it. */
+  public boolean hasClocks() {
+    return clockGates.length > 0;
+  }
+
+  /** True if instances are simulated by table lookup. */
+  public boolean hasTruthTable() {
+    return truthTable != null;
+  }
+
+  /**
+   * Outputs for one input combination (bit i = input pin i), with bit j
+   * of the result being output pin j. Only valid if hasTruthTable().
+   */
+  public long lookup(int inputs) {
+    return truthTable[inputs];
+  }
+
+  public Netlist getNetlist() {
+    return netlist;
+  }
+
+  /** Gate index of each input pin's Switch, in pin order. */
+  public int[] getInputGates() {
+    return inputGates.clone();
+  }
+
+  /** Gate index of each output pin's OutputProbe, in pin order. */
+  public int[] getOutputGates() {
+    return outputGates.clone();
+  }
+
+  int inputGate(int pin) {
+    return inputGates[pin];
+  }
+
+  int outputGate(int pin) {
+    return outputGates[pin];
+  }
+
+  /** Output pin backed by a gate, or -1. */
+  int outputPin(int gate) {
+    return outputPinOfGate[gate];
+  }
+
+  /** Each gate's delay in ticks under config, shared by every instance. */
+  int[] delays(SimulationConfig config) {
+    Delays d = delays;
+    if (d == null || !d.config().equals(config)) {
+      d = new Delays(config, netlist.resolveDelays(config));
+      delays = d;
+    }
+    return d.ticks();
+  }
+
+  /** A fresh state vector for a new instance. */
+  NetlistState newState() {
+    return initialState.copy();
+  }
+}
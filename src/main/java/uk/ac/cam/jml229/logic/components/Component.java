@@ -1,12 +1,15 @@
 package uk.ac.cam.jml229.logic.components;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
+import uk.ac.cam.jml229.logic.core.ActivityProfile;
 import uk.ac.cam.jml229.logic.core.Wire;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
 import uk.ac.cam.jml229.logic.core.Simulator;
-import uk.ac.cam.jml229.logic.io.SettingsManager;
+import uk.ac.cam.jml229.logic.exceptions.InvalidInputException;
 
 public abstract class Component {
   private String name;
@@ -17,8 +20,23 @@ public abstract class Component {
   // null = use global default. Integer = specific override.
   private Integer customDelay = null;
 
+  // Engine of the Circuit this component lives in (null while detached)
+  private Simulator simulator;
+  // Reused for every scheduled update, so delays don't allocate a closure
+  private final Runnable updateTask = this::evaluate;
+
+  // Levelized evaluation bookkeeping (see Circuit.ensureLevels)
+  private int level = 0;
+  private boolean markedDirty = false;
+
+  // Slot in the engine's ActivityProfile, if it has counted this component
+  private int activityId = 0;
+
   private final List<Wire> outputWires = new ArrayList<>();
-  private final List<Boolean> inputs = new ArrayList<>();
+  // Input states packed one bit per pin. Pins 0-63 live in inputBits;
+  // only wide CustomComponents ever need the overflow words.
+  private long inputBits = 0L;
+  private long[] highInputBits = null;
   private int inputCount = 0;
 
   public Component(String name) {
@@ -34,6 +52,40 @@ public abstract class Component {
     return customDelay;
   }
 
+  // --- Engine Binding ---
+  public void setSimulator(Simulator simulator) {
+    this.simulator = simulator;
+  }
+
+  public Simulator getSimulator() {
+    return simulator;
+  }
+
+  // --- Levelization ---
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public boolean isMarkedDirty() {
+    return markedDirty;
+  }
+
+  public void setMarkedDirty(boolean dirty) {
+    this.markedDirty = dirty;
+  }
+
+  public int getActivityId() {
+    return activityId;
+  }
+
+  public void setActivityId(int id) {
+    this.activityId = id;
+  }
+
   public void rotate() {
     rotation = (rotation + 1) % 4;
   }
@@ -52,33 +104,83 @@ public abstract class Component {
 
   // --- Logic with Delay ---
   public void setInput(int index, boolean state) {
-    while (inputs.size() <= index) {
-      inputs.add(false);
-    }
+    if (index < 0)
+      throw new InvalidInputException(name, index, inputCount);
 
-    if (inputs.get(index) != state) {
-      inputs.set(index, state);
+    if (getInput(index) != state) {
+      if (index < 64) {
+        inputBits ^= 1L << index;
+      } else {
+        flipHighInput(index);
+      }
 
-      if (SettingsManager.isPropagationDelayEnabled()) {
+      // Settings come from the engine's snapshot, never from Preferences
+      SimulationConfig cfg = (simulator != null) ? simulator.getConfig() : null;
+      if (cfg != null && cfg.propagationDelayEnabled()) {
         // Priority: Custom Delay -> Global Delay
-        int d = (customDelay != null) ? customDelay : SettingsManager.getGateDelay();
-        Simulator.schedule(this::update, d);
+        int d = (customDelay != null) ? customDelay : cfg.gateDelay();
+        simulator.schedule(updateTask, d);
+      } else if (simulator != null && simulator.isLevelized()) {
+        // Zero delay: evaluate once, after everything below us has settled
+        simulator.markDirty(this);
       } else {
-        update();
+        evaluate();
       }
     }
   }
 
+  // An update the engine asked for, as opposed to an edit's
+  private void evaluate() {
+    ActivityProfile profile = (simulator != null) ? simulator.getProfile() : null;
+    if (profile != null)
+      profile.evaluated(this);
+    update();
+  }
+
   public boolean getInput(int index) {
-    if (index >= 0 && index < inputs.size())
-      return inputs.get(index);
+    if (index >= 0 && index < 64)
+      return ((inputBits >>> index) & 1L) != 0;
+    if (index >= 64 && highInputBits != null) {
+      int word = (index >>> 6) - 1;
+      return word < highInputBits.length && ((highInputBits[word] >>> index) & 1L) != 0;
+    }
     return false;
   }
 
+  /**
+   * Overwrites an input without triggering update().
+   * Used when a compiled netlist copies its results back to the circuit.
+   */
+  public void syncInput(int index, boolean state) {
+    if (index >= 0 && getInput(index) != state) {
+      if (index < 64) {
+        inputBits ^= 1L << index;
+      } else {
+        flipHighInput(index);
+      }
+    }
+  }
+
+  /**
+   * States of inputs 0-63 as a bitmask (bit i = input i).
+   * Bits at or above getInputCount() are not guaranteed to be clear.
+   */
+  protected long getInputBits() {
+    return inputBits;
+  }
+
+  private void flipHighInput(int index) {
+    int word = (index >>> 6) - 1;
+    if (highInputBits == null) {
+      highInputBits = new long[word + 1];
+    } else if (highInputBits.length <= word) {
+      highInputBits = Arrays.copyOf(highInputBits, word + 1);
+    }
+    highInputBits[word] ^= 1L << index;
+  }
+
   protected void setInputCount(int count) {
     this.inputCount = count;
-    while (inputs.size() < count)
-      inputs.add(false);
   }
 
   public int getInputCount() {
@@ -1,79 +1,222 @@
 package uk.ac.cam.jml229.logic.components;
 
-import java.util.ArrayList;
 import java.util.List;
 import uk.ac.cam.jml229.logic.core.Circuit;
+import uk.ac.cam.jml229.logic.core.Simulator;
 import uk.ac.cam.jml229.logic.core.Wire;
+import uk.ac.cam.jml229.logic.core.netlist.Netlist;
+import uk.ac.cam.jml229.logic.core.netlist.NetlistState;
 import uk.ac.cam.jml229.logic.components.io.*;
 
+/**
+ * An IC placed in a circuit. The structure lives in a ChipDefinition shared
+ * by every copy; each instance only owns a NetlistState holding its signal
+ * and flip-flop bits.
+ *
+ * In the event-driven engine an input change schedules update() after the
+ * chip's own delay. With propagation delay off, update() settles the
+ * internals at once (or looks the outputs up in the definition's truth
+ * table) and drives the outputs. With it on, update() only sets the pin
+ * gates, and each internal gate is then scheduled on the owning Simulator
+ * after its own delay, output probes included, so ripple and glitches
+ * inside the chip show up just as when Netlist.compile() inlines it.
+ * A gate's new outputs are driven by a follow-up event in the same tick,
+ * as a top-level gate's wire deliveries are, so every gate due at a tick
+ * sees the nets as they were at its start.
+ */
 public class CustomComponent extends Component {
 
-  private final Circuit innerCircuit;
-  private final List<Switch> internalInputs = new ArrayList<>();
-  private final List<OutputProbe> internalOutputs = new ArrayList<>();
+  private final ChipDefinition definition;
+  private NetlistState state; // Built on demand for truth-table chips
+  private boolean stateStale = false;
+  // Evaluates one internal gate; shared by every event this chip schedules
+  private final Simulator.IndexedAction gateTask = this::evaluateGate;
+  // Drives a gate's computed outputs, packed as (gate << 2) | outputs
+  private final Simulator.IndexedAction commitTask = this::commitGate;
 
   public CustomComponent(String name, Circuit templateCircuit) {
-    super(name);
-
-    // Deep Copy the template so this chip works independently
-    this.innerCircuit = templateCircuit.cloneCircuit();
-
-    // Find the IO components inside the copy
-    for (Component c : innerCircuit.getComponents()) {
-      if (c instanceof Switch) {
-        internalInputs.add((Switch) c);
-      } else if (c instanceof OutputProbe) {
-        internalOutputs.add((OutputProbe) c);
-      }
-    }
+    this(name, new ChipDefinition(name, templateCircuit));
+  }
 
-    // Sort pins by Y position to match visual layout
-    internalInputs.sort((a, b) -> Integer.compare(a.getY(), b.getY()));
-    internalOutputs.sort((a, b) -> Integer.compare(a.getY(), b.getY()));
+  public CustomComponent(String name, ChipDefinition definition) {
+    super(name);
+    this.definition = definition;
+    if (!definition.hasTruthTable())
+      this.state = definition.newState();
 
     // Configure External Pins
-    setInputCount(internalInputs.size());
+    setInputCount(definition.getInputCount());
+  }
 
-    for (int i = 0; i < internalOutputs.size(); i++) {
-      final int index = i;
-      OutputProbe probe = internalOutputs.get(i);
+  public ChipDefinition getDefinition() {
+    return definition;
+  }
 
-      probe.setOnStateChanged(() -> {
-        boolean val = probe.getState();
-        Wire w = getOutputWire(index);
-        if (w != null) {
-          w.setSignal(val);
-        }
-      });
+  /**
+   * This instance's signal state, indexed like the definition's netlist.
+   * Truth-table chips only work it out when asked.
+   */
+  public NetlistState getState() {
+    if (state == null)
+      state = definition.newState();
+    if (stateStale) {
+      loadInputs();
+      state.propagate(ChipDefinition.MAX_PASSES);
+      stateStale = false;
     }
+    return state;
   }
 
+  /** The shared layout of the chip's internals. Read only. */
   public Circuit getInnerCircuit() {
-    return innerCircuit;
+    return definition.getLayout();
+  }
+
+  /** Internal Switches backing the chip's input pins, in pin order. */
+  public List<Switch> getInputPins() {
+    return definition.getInputPins();
+  }
+
+  /** Internal OutputProbes backing the chip's output pins, in pin order. */
+  public List<OutputProbe> getOutputPins() {
+    return definition.getOutputPins();
   }
 
   @Override
   public Component makeCopy() {
-    return new CustomComponent(getName(), this.innerCircuit);
+    // Shares the definition; the copy starts from the chip's initial state
+    CustomComponent copy = new CustomComponent(getName(), definition);
+    copy.setCustomDelay(getCustomDelay());
+    return copy;
+  }
+
+  @Override
+  public void setOutputWire(int index, Wire w) {
+    super.setOutputWire(index, w);
+    // With delays on, update() leaves the outputs to the internal events,
+    // so a new wire has to start from the pin's current value
+    if (w != null && hasGateDelays() && index < definition.getOutputCount())
+      w.setSignal(getState().getInput(definition.outputGate(index), 0));
   }
 
   @Override
   public int getOutputCount() {
-    return Math.max(1, internalOutputs.size());
+    return Math.max(1, definition.getOutputCount());
   }
 
   @Override
   public void update() {
-    // Bridge In: External Input -> Internal Switch
-    // When these switches toggle, they queue events in the Simulator.
-    // Eventually, those events ripple to the OutputProbes, triggering the listeners
-    // above.
-    for (int i = 0; i < internalInputs.size(); i++) {
-      if (i < getInputCount()) {
-        boolean val = getInput(i);
-        internalInputs.get(i).toggle(val);
+    boolean timed = hasGateDelays();
+    if (timed && !stateStale) {
+      NetlistState st = getState();
+      for (int i = 0; i < definition.getInputCount(); i++) {
+        int g = definition.inputGate(i);
+        scheduleFanout(g, st.setSource(g, getInput(i)));
+      }
+      return;
+    }
+
+    int outputs = definition.getOutputCount();
+
+    if (definition.truthTable != null && !timed) {
+      int mask = (1 << definition.getInputCount()) - 1;
+      long row = definition.truthTable[(int) getInputBits() & mask];
+      stateStale = true;
+      for (int i = 0; i < outputs; i++) {
+        Wire w = getOutputWire(i);
+        if (w != null) {
+          w.setSignal(((row >>> i) & 1L) != 0);
+        }
+      }
+      return;
+    }
+
+    // Settle at once; this also catches a table chip up the first time it
+    // updates after delays are switched on
+    NetlistState st = getState();
+    loadInputs();
+    st.propagate(ChipDefinition.MAX_PASSES);
+
+    // Bridge Out: probe inputs -> external wires
+    for (int i = 0; i < outputs; i++) {
+      Wire w = getOutputWire(i);
+      if (w != null) {
+        w.setSignal(st.getInput(definition.outputGate(i), 0));
+      }
+    }
+  }
+
+  /**
+   * Toggles every Clock inside the chip, like Clock.tick() does for a
+   * top-level clock. The change then propagates as it would from an input:
+   * settled at once, or gate by gate when delays are on.
+   */
+  public void tickClocks() {
+    NetlistState st = getState();
+    boolean timed = hasGateDelays();
+    for (int g : definition.clockGates) {
+      int changed = st.setSource(g, !st.getState(g));
+      if (timed)
+        scheduleFanout(g, changed);
+      else if (changed != 0)
+        st.markFanout(g);
+    }
+    if (!timed)
+      update();
+  }
+
+  private boolean hasGateDelays() {
+    Simulator sim = getSimulator();
+    return sim != null && sim.getConfig().propagationDelayEnabled();
+  }
+
+  // Queues every gate reading a changed output of gate g, after its delay
+  private void scheduleFanout(int g, int changedPins) {
+    Simulator sim = getSimulator();
+    if (changedPins == 0 || sim == null)
+      return;
+    Netlist nl = definition.getNetlist();
+    int[] delay = definition.delays(sim.getConfig());
+    for (int pin = 0; changedPins != 0; pin++, changedPins >>>= 1) {
+      if ((changedPins & 1) == 0)
+        continue;
+      int net = nl.getOutputNet(g, pin);
+      for (int i = 0; i < nl.getFanoutCount(net); i++) {
+        int target = nl.getFanoutGate(net, i);
+        sim.schedule(gateTask, target, delay[target]);
       }
     }
+  }
 
+  // A scheduled internal gate event; drives its outputs after the rest of the tick's gates
+  private void evaluateGate(int g) {
+    int outputs = getState().compute(g);
+    Simulator sim = getSimulator();
+    if (sim != null)
+      sim.schedule(commitTask, (g << 2) | outputs, 0);
+    else
+      commitGate((g << 2) | outputs);
+  }
+
+  // Output probes drive the chip's pins with the value they computed
+  private void commitGate(int packed) {
+    int g = packed >>> 2;
+    NetlistState st = getState();
+    scheduleFanout(g, st.commit(g, packed & 3));
+    int pin = definition.outputPin(g);
+    if (pin >= 0) {
+      Wire w = getOutputWire(pin);
+      if (w != null)
+        w.setSignal((packed & 1) != 0);
+    }
+  }
+
+  // Bridge In: external inputs -> the pins' Switch gates
+  private void loadInputs() {
+    for (int i = 0; i < definition.getInputCount(); i++) {
+      int g = definition.inputGate(i);
+      if (state.setSource(g, getInput(i)) != 0)
+        state.markFanout(g);
+    }
   }
 }
@@ -8,7 +8,7 @@ public class AndGate extends LogicGate {
 
   @Override
   public void updateLogic() {
-    // Start with TRUE. If any input is FALSE, the result becomes FALSE.
-    state = reduceInputs(true, (acc, val) -> acc && val);
+    // All active input bits must be set
+    state = allInputsHigh();
   }
 }
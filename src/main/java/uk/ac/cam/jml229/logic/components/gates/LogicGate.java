@@ -39,6 +39,32 @@ public abstract class LogicGate extends Component {
     return result;
   }
 
+  // --- Bitwise Evaluation ---
+  // Inputs are packed into a bitmask (see Component.getInputBits), so the
+  // common reductions are a mask compare or a popcount.
+
+  /** Mask covering the gate's active inputs (at most 32). */
+  protected long activeInputMask() {
+    int n = getInputCount();
+    return (n >= 64) ? -1L : (1L << n) - 1;
+  }
+
+  /** True if every active input is high (AND). */
+  protected boolean allInputsHigh() {
+    long mask = activeInputMask();
+    return (getInputBits() & mask) == mask;
+  }
+
+  /** True if at least one active input is high (OR). */
+  protected boolean anyInputHigh() {
+    return (getInputBits() & activeInputMask()) != 0;
+  }
+
+  /** True if an odd number of active inputs are high (XOR). */
+  protected boolean inputParity() {
+    return (Long.bitCount(getInputBits() & activeInputMask()) & 1) != 0;
+  }
+
   public void resizeInputs(int count) {
     if (count < 2)
       count = 2;
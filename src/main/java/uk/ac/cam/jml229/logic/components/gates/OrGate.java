@@ -7,7 +7,7 @@ public class OrGate extends LogicGate {
 
   @Override
   public void updateLogic() {
-    // Start with FALSE. If any input is TRUE, the result becomes TRUE.
-    state = reduceInputs(false, (acc, val) -> acc || val);
+    // Any active input bit set
+    state = anyInputHigh();
   }
 }
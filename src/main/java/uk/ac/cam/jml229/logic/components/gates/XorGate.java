@@ -7,7 +7,7 @@ public class XorGate extends LogicGate {
 
   @Override
   public void updateLogic() {
-    // XOR is effectively a partity check, so start with FALSE
-    state = reduceInputs(false, (acc, val) -> acc ^ val);
+    // XOR is effectively a parity check on the input bits
+    state = inputParity();
   }
 }
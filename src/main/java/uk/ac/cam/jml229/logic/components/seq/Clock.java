@@ -1,10 +1,20 @@
 package uk.ac.cam.jml229.logic.components.seq;
 
 import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.core.Simulator;
 
+/**
+ * A square-wave source. With no period it is toggled from outside by
+ * Circuit.tick() (the GUI's clock timer). With a period it runs in
+ * simulation time instead: the engine fires its edges, going high at
+ * phase + k * period and low half a period later, so several clocks keep
+ * exact, repeatable ratios however fast the simulation runs.
+ */
 public class Clock extends Component {
 
   private boolean state = false;
+  private long period = 0; // Ticks per cycle; 0 = driven by Circuit.tick()
+  private long phase = 0; // Tick of the first rising edge
 
   public Clock(String name) {
     super(name);
@@ -30,4 +40,76 @@ public class Clock extends Component {
   public boolean getState() {
     return state;
   }
+
+  // --- Simulation-Time Timing ---
+
+  /**
+   * Runs the clock in simulation time, or hands it back to Circuit.tick()
+   * when period is 0.
+   *
+   * @throws IllegalArgumentException if period is 1 or negative, or phase
+   *                                  is negative
+   */
+  public void setTiming(long period, long phase) {
+    if (period < 0 || period == 1)
+      throw new IllegalArgumentException("Clock period must be 0 or at least 2 ticks, got " + period);
+    if (phase < 0)
+      throw new IllegalArgumentException("Clock phase must not be negative, got " + phase);
+
+    Simulator sim = getSimulator();
+    if (sim != null)
+      sim.removeClock(this);
+    this.period = period;
+    this.phase = phase;
+    if (sim != null && period > 0)
+      sim.addClock(this);
+  }
+
+  public long getPeriod() {
+    return period;
+  }
+
+  public long getPhase() {
+    return phase;
+  }
+
+  /** True if the engine fires this clock, rather than Circuit.tick(). */
+  public boolean isTimed() {
+    return period > 0;
+  }
+
+  /** First tick at or after the given one with an edge. Timed clocks only. */
+  public long nextEdge(long from) {
+    long half = period / 2;
+    long r = Math.floorMod(from - phase, period);
+    if (r == 0 || r == half)
+      return from;
+    return from + (r < half ? half - r : period - r);
+  }
+
+  /** Called by the engine at an edge: sets the level due at that tick. */
+  public void edge(long tick) {
+    boolean high = Math.floorMod(tick - phase, period) < period / 2;
+    if (high != state) {
+      state = high;
+      update();
+    }
+  }
+
+  @Override
+  public void setSimulator(Simulator simulator) {
+    Simulator old = getSimulator();
+    if (old != null && old != simulator)
+      old.removeClock(this);
+    super.setSimulator(simulator);
+    if (simulator != null && period > 0)
+      simulator.addClock(this);
+  }
+
+  @Override
+  public Component makeCopy() {
+    Clock copy = (Clock) super.makeCopy();
+    copy.setTiming(period, phase);
+    return copy;
+  }
 }
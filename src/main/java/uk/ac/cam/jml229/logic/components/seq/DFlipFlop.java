@@ -36,4 +36,8 @@ public class DFlipFlop extends Component {
     if (getOutputWire(1) != null)
       getOutputWire(1).setSignal(!state);
   }
+
+  public boolean getState() {
+    return state;
+  }
 }
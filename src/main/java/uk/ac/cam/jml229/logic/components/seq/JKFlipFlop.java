@@ -37,4 +37,8 @@ public class JKFlipFlop extends Component {
     if (getOutputWire(1) != null)
       getOutputWire(1).setSignal(!state);
   }
+
+  public boolean getState() {
+    return state;
+  }
 }
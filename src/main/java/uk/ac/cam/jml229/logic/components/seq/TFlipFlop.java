@@ -30,4 +30,8 @@ public class TFlipFlop extends Component {
     if (getOutputWire(1) != null)
       getOutputWire(1).setSignal(!state);
   }
+
+  public boolean getState() {
+    return state;
+  }
 }
@@ -0,0 +1,118 @@
+package uk.ac.cam.jml229.logic.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.cam.jml229.logic.components.Component;
+
+/**
+ * How often each wire toggled and each component was evaluated since
+ * profiling started, for power estimates and finding hot spots.
+ *
+ * Counters live in primitive arrays indexed by a dense id that each Wire
+ * and Component carries, handed out the first time it is counted. A
+ * Simulator only has a profile while profiling is switched on, so the
+ * cost when off is one null check per toggle and evaluation.
+ *
+ * Only the thread driving the simulator may update or read a profile;
+ * the GUI copies what it needs into its SignalSnapshot.
+ */
+public final class ActivityProfile {
+
+  private final long startTick;
+
+  private final List<Wire> wires = new ArrayList<>();
+  private long[] toggles = new long[64];
+
+  private final List<Component> components = new ArrayList<>();
+  private long[] evaluations = new long[64];
+
+  ActivityProfile(long startTick) {
+    this.startTick = startTick;
+  }
+
+  // --- Counting (hot path) ---
+
+  void toggled(Wire w) {
+    int id = w.activityId;
+    if (id >= wires.size() || wires.get(id) != w)
+      id = register(w);
+    toggles[id]++;
+  }
+
+  /** Counts one evaluation; called by the engine just before update(). */
+  public void evaluated(Component c) {
+    int id = c.getActivityId();
+    if (id >= components.size() || components.get(id) != c)
+      id = register(c);
+    evaluations[id]++;
+  }
+
+  private int register(Wire w) {
+    int id = wires.size();
+    wires.add(w);
+    w.activityId = id;
+    if (id == toggles.length)
+      toggles = Arrays.copyOf(toggles, 2 * id);
+    return id;
+  }
+
+  private int register(Component c) {
+    int id = components.size();
+    components.add(c);
+    c.setActivityId(id);
+    if (id == evaluations.length)
+      evaluations = Arrays.copyOf(evaluations, 2 * id);
+    return id;
+  }
+
+  // --- Results ---
+
+  /** Simulation tick profiling started at. */
+  public long getStartTick() {
+    return startTick;
+  }
+
+  public long getToggles(Wire w) {
+    int id = w.activityId;
+    return (id < wires.size() && wires.get(id) == w) ? toggles[id] : 0;
+  }
+
+  public long getEvaluations(Component c) {
+    int id = c.getActivityId();
+    return (id < components.size() && components.get(id) == c) ? evaluations[id] : 0;
+  }
+
+  /** Every wire that has toggled at least once, in order of first toggle. */
+  public List<Wire> getWires() {
+    return Collections.unmodifiableList(wires);
+  }
+
+  /** Every component evaluated at least once, in order of first evaluation. */
+  public List<Component> getComponents() {
+    return Collections.unmodifiableList(components);
+  }
+
+  public long getMaxToggles() {
+    long max = 0;
+    for (int i = 0; i < wires.size(); i++)
+      max = Math.max(max, toggles[i]);
+    return max;
+  }
+
+  public long getTotalToggles() {
+    long total = 0;
+    for (int i = 0; i < wires.size(); i++)
+      total += toggles[i];
+    return total;
+  }
+
+  public long getTotalEvaluations() {
+    long total = 0;
+    for (int i = 0; i < components.size(); i++)
+      total += evaluations[i];
+    return total;
+  }
+}
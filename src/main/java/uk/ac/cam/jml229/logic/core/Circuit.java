@@ -1,25 +1,91 @@
 package uk.ac.cam.jml229.logic.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.awt.Point;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.CustomComponent;
+import uk.ac.cam.jml229.logic.components.gates.LogicGate;
 import uk.ac.cam.jml229.logic.components.seq.Clock;
+import uk.ac.cam.jml229.logic.components.seq.DFlipFlop;
+import uk.ac.cam.jml229.logic.components.seq.JKFlipFlop;
+import uk.ac.cam.jml229.logic.components.seq.TFlipFlop;
 
 public class Circuit {
   // The core data
   private final List<Component> components = new ArrayList<>();
   private final List<Wire> wires = new ArrayList<>();
 
+  // Adjacency, kept in step with the lists so edits cost O(degree):
+  // membership, and the wire driving each input port.
+  // A component's output wires are held by the component itself.
+  private final Set<Component> componentSet = new HashSet<>();
+  private final Set<Wire> wireSet = new HashSet<>();
+  private final Map<Component, Wire[]> drivers = new HashMap<>();
+
+  // Inside a transaction removals only update the sets; the lists drop the
+  // dead entries in one pass at commit, so deleting k components costs
+  // O(n + k * degree) rather than O(k * n), and the order is kept. Only
+  // edits compact: readers on other threads must never see the lists move.
+  // Removed entries still in the lists, so an add only compacts early when
+  // it brings one of them back:
+  private final Set<Component> deadComponents = new HashSet<>();
+  private final Set<Wire> deadWires = new HashSet<>();
+
+  // Clock sources, kept in step with components so tick() costs O(clocks)
+  private final List<Clock> clocks = new ArrayList<>();
+  private final List<CustomComponent> clockedChips = new ArrayList<>();
+
+  // The engine that schedules this circuit's events.
+  // Normally our own, but another circuit can lend us its engine
+  // (e.g. a paste buffer joining the main circuit) so events share a queue.
+  private final Simulator ownSimulator = new Simulator();
+  private Simulator simulator = ownSimulator;
+
+  // Set whenever the structure changes; levels are recomputed lazily
+  private boolean levelsDirty = true;
+
+  // Open transactions (they nest) and what they have put off until commit
+  private int transactionDepth = 0;
+  private final Set<Component> pendingUpdates = new LinkedHashSet<>();
+  private boolean pendingChange = false;
+
+  private final List<Consumer<Circuit>> changeListeners = new CopyOnWriteArrayList<>();
+  private final List<CircuitListener> listeners = new CopyOnWriteArrayList<>();
+  private final List<Consumer<CircuitListener>> pendingEvents = new ArrayList<>();
+
+  // Bumped by every edit, structural or geometric. Edits all come from one
+  // thread, but caches on other threads poll it, hence atomic.
+  private final AtomicLong version = new AtomicLong();
+
+  public Circuit() {
+    ownSimulator.setOwner(this);
+  }
+
   /**
    * Advances the simulation by one step.
    * Called by the global Timer.
    */
   public void tick() {
-    for (Component c : components) {
-      if (c instanceof Clock) {
-        ((Clock) c).tick();
-      }
+    for (Clock c : clocks) {
+      if (!c.isTimed()) // Timed clocks are fired by the engine
+        c.tick();
+    }
+    // Clocks inside ICs, however deeply nested
+    for (CustomComponent cc : clockedChips) {
+      cc.tickClocks();
     }
   }
 
@@ -29,12 +95,28 @@ public class Circuit {
    * it ensures those wires are tracked too.
    */
   public void addComponent(Component c) {
+    if (hasDeadEntry(c))
+      compact(); // Or c would be listed twice
+    componentSet.add(c);
     components.add(c);
+    if (c instanceof Clock k)
+      clocks.add(k);
+    else if (c instanceof CustomComponent cc && cc.getDefinition().hasClocks())
+      clockedChips.add(cc);
+    c.setSimulator(simulator);
+    fire(l -> l.componentAdded(c));
     for (Wire w : c.getAllOutputs()) {
-      if (!wires.contains(w)) {
+      if (wireSet.add(w)) {
         wires.add(w);
+        for (Wire.PortConnection pc : w.getDestinations()) {
+          setDriver(pc.component, pc.inputIndex, w);
+          Component dest = pc.component;
+          int index = pc.inputIndex;
+          fire(l -> l.connectionAdded(w, dest, index));
+        }
       }
     }
+    changed();
   }
 
   /**
@@ -42,32 +124,51 @@ public class Circuit {
    */
   public void removeComponent(Component c) {
     // 1. Remove wires driven BY this component (All Outputs)
-    List<Wire> outputWires = new ArrayList<>();
-    for (Wire w : wires) {
-      if (w.getSource() == c) {
-        outputWires.add(w);
-      }
-    }
+    for (Wire w : c.getAllOutputs()) {
+      if (!wireSet.remove(w))
+        continue;
+      deadWires.add(w);
 
-    // --- Turn off the destinations before deleting the wire ---
-    for (Wire w : outputWires) {
+      // --- Turn off the destinations before deleting the wire ---
       for (Wire.PortConnection pc : w.getDestinations()) {
         // Reset the destination input to FALSE so it doesn't stay "Green"
         pc.component.setInput(pc.inputIndex, false);
         // Force the destination to recalculate (e.g. LED turns dark)
-        pc.component.update();
+        update(pc.component);
+        clearDriver(pc.component, pc.inputIndex, w);
+        Component dest = pc.component;
+        int index = pc.inputIndex;
+        fire(l -> l.connectionRemoved(w, dest, index));
       }
     }
 
-    wires.removeAll(outputWires);
-
     // Remove wires driving INTO this component (Inputs)
-    for (Wire w : wires) {
-      w.getDestinations().removeIf(pc -> pc.component == c);
+    Wire[] in = drivers.remove(c);
+    if (in != null) {
+      for (int i = 0; i < in.length; i++) {
+        Wire w = in[i];
+        int index = i;
+        if (w != null) {
+          w.removeDestination(c, i);
+          fire(l -> l.connectionRemoved(w, c, index));
+        }
+      }
     }
 
     // Remove component
-    components.remove(c);
+    if (componentSet.remove(c))
+      deadComponents.add(c);
+    if (c instanceof Clock)
+      clocks.remove(c);
+    else if (c instanceof CustomComponent)
+      clockedChips.remove(c);
+    if (c.getSimulator() == simulator) {
+      c.setSimulator(null);
+    }
+    fire(l -> l.componentRemoved(c));
+    if (transactionDepth == 0)
+      compact();
+    changed();
   }
 
   /**
@@ -85,13 +186,8 @@ public class Circuit {
       return false;
 
     // Check availability
-    for (Wire w : wires) {
-      for (Wire.PortConnection pc : w.getDestinations()) {
-        if (pc.component == dest && pc.inputIndex == inputIndex) {
-          return false; // Input occupied
-        }
-      }
-    }
+    if (getDriver(dest, inputIndex) != null)
+      return false; // Input occupied
 
     // Get or Create Wire at specific index
     Wire w = source.getOutputWire(sourceOutputIndex);
@@ -101,18 +197,24 @@ public class Circuit {
       w = new Wire(source);
       source.setOutputWire(sourceOutputIndex, w);
       wires.add(w);
+      wireSet.add(w);
       isNewWire = true;
     }
 
     // If it's a new wire, we calculate the source's output immediately
     if (isNewWire) {
-      source.update();
+      update(source);
     }
 
     w.addDestination(dest, inputIndex);
+    if (wireSet.contains(w))
+      setDriver(dest, inputIndex, w);
     dest.setInput(inputIndex, w.getSignal());
 
-    dest.update();
+    update(dest);
+    Wire wire = w;
+    fire(l -> l.connectionAdded(wire, dest, inputIndex));
+    changed();
 
     return true;
   }
@@ -122,29 +224,281 @@ public class Circuit {
    */
   public void removeConnection(Component dest, int inputIndex) {
     // Find the wire connected to this specific input
-    for (Wire w : wires) {
-      boolean wasConnected = false;
+    Wire w = getDriver(dest, inputIndex);
+    if (w == null)
+      return;
 
-      // Check if this wire hits the target
-      for (Wire.PortConnection pc : w.getDestinations()) {
-        if (pc.component == dest && pc.inputIndex == inputIndex) {
-          wasConnected = true;
-          break;
+    // Reset signal to FALSE (The Bug Fix you already had!)
+    dest.setInput(inputIndex, false);
+
+    // RECOMMENDATION: Update component so it visually changes color immediately
+    update(dest);
+
+    // Remove the physical connection
+    w.removeDestination(dest, inputIndex);
+    clearDriver(dest, inputIndex, w);
+    fire(l -> l.connectionRemoved(w, dest, inputIndex));
+    changed();
+  }
+
+  // --- Geometry ---
+  // Components and waypoints are plain mutable objects; edit them through
+  // these so listeners hear about it. Like every other edit they belong on
+  // the circuit's editing thread, so a move can't race a transaction.
+
+  public void moveComponent(Component c, int x, int y) {
+    if (c.getX() == x && c.getY() == y)
+      return;
+    c.setPosition(x, y);
+    fire(l -> l.componentMoved(c));
+  }
+
+  public void rotateComponent(Component c) {
+    c.rotate();
+    fire(l -> l.componentMoved(c));
+  }
+
+  /** Changes a gate's input count, which moves its input pins. */
+  public void resizeInputs(LogicGate gate, int count) {
+    gate.resizeInputs(count);
+    levelsDirty = true;
+    fire(l -> l.componentMoved(gate));
+  }
+
+  /** Replaces the waypoints of one wire segment. */
+  public void setWaypoints(Wire.PortConnection pc, List<Point> points) {
+    pc.waypoints.clear();
+    pc.waypoints.addAll(points);
+    waypointsChanged(pc);
+  }
+
+  /** Call after editing pc.waypoints in place, e.g. while dragging. */
+  public void waypointsChanged(Wire.PortConnection pc) {
+    fire(l -> l.waypointsChanged(pc));
+  }
+
+  // --- Transactions ---
+
+  /**
+   * Starts a batch of edits. Until the matching commitTransaction(),
+   * components touched by an edit are not re-evaluated and listeners are
+   * not told, so a paste or load of thousands of parts doesn't propagate
+   * through every intermediate state. Transactions nest; only the
+   * outermost commit applies them.
+   *
+   * A circuit is not thread-safe: every edit, geometry included, must be
+   * made by one thread at a time. In the GUI that is the simulation
+   * thread, reached through SimulationController.edit().
+   */
+  public void beginTransaction() {
+    transactionDepth++;
+  }
+
+  /**
+   * Ends a batch: the components an edit touched, and everything they
+   * feed, are settled in one pass in level order (see settle()). Then
+   * listeners get a single change event.
+   */
+  public void commitTransaction() {
+    if (transactionDepth == 0)
+      throw new IllegalStateException("No transaction to commit");
+    if (--transactionDepth > 0)
+      return;
+
+    compact();
+    if (!pendingUpdates.isEmpty()) {
+      List<Component> touched = new ArrayList<>(pendingUpdates);
+      pendingUpdates.clear();
+      settle(touched);
+    }
+    if (!pendingEvents.isEmpty()) {
+      List<Consumer<CircuitListener>> events = new ArrayList<>(pendingEvents);
+      pendingEvents.clear();
+      for (Consumer<CircuitListener> event : events) {
+        for (CircuitListener listener : listeners)
+          event.accept(listener);
+      }
+    }
+    if (pendingChange) {
+      pendingChange = false;
+      fireChanged();
+    }
+  }
+
+  /** Runs the edits as one transaction, committing even if they throw. */
+  public void transaction(Runnable edits) {
+    beginTransaction();
+    try {
+      edits.run();
+    } finally {
+      commitTransaction();
+    }
+  }
+
+  public boolean inTransaction() {
+    return transactionDepth > 0;
+  }
+
+  /**
+   * Listeners run after every structural edit made outside a transaction,
+   * and once per committed transaction, on the thread making the edit.
+   */
+  public void addChangeListener(Consumer<Circuit> listener) {
+    changeListeners.add(listener);
+  }
+
+  public void removeChangeListener(Consumer<Circuit> listener) {
+    changeListeners.remove(listener);
+  }
+
+  /** Fine-grained events; see CircuitListener. */
+  public void addCircuitListener(CircuitListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeCircuitListener(CircuitListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Goes up by at least one with every edit a CircuitListener would hear
+   * of, including moves. A cache built at version v is current for as long
+   * as getVersion() still returns v.
+   */
+  public long getVersion() {
+    return version.get();
+  }
+
+  /**
+   * Evaluates each component of the cone once, lowest level first, copying
+   * every output straight into the inputs it drives. The deliveries that
+   * update() also queues then find nothing left to change, so the engine
+   * never sees the glitches a half-wired cone would otherwise cause.
+   * Anything a loop brings back to an evaluated component is left to those
+   * deliveries, as usual.
+   */
+  private void settle(List<Component> touched) {
+    ensureLevels();
+    PriorityQueue<Component> queue = new PriorityQueue<>(Comparator.comparingInt(Component::getLevel));
+    Set<Component> done = new HashSet<>();
+    for (Component c : touched) {
+      if (componentSet.contains(c))
+        queue.add(c);
+    }
+    while (!queue.isEmpty()) {
+      Component c = queue.poll();
+      if (!done.add(c))
+        continue;
+      c.update();
+      for (Wire w : c.getAllOutputs()) {
+        for (Wire.PortConnection pc : w.getDestinations()) {
+          Component next = pc.component;
+          if (done.contains(next) || !componentSet.contains(next)
+              || next.getInput(pc.inputIndex) == w.getSignal())
+            continue;
+          next.syncInput(pc.inputIndex, w.getSignal());
+          queue.add(next);
         }
       }
+    }
+  }
+
+  private void update(Component c) {
+    if (transactionDepth > 0)
+      pendingUpdates.add(c);
+    else
+      c.update();
+  }
+
+  private void changed() {
+    levelsDirty = true;
+    if (transactionDepth > 0)
+      pendingChange = true;
+    else
+      fireChanged();
+  }
+
+  private void fire(Consumer<CircuitListener> event) {
+    version.incrementAndGet();
+    if (listeners.isEmpty())
+      return;
+    if (transactionDepth > 0) {
+      pendingEvents.add(event);
+    } else {
+      for (CircuitListener listener : listeners)
+        event.accept(listener);
+    }
+  }
+
+  private void fireChanged() {
+    for (Consumer<Circuit> listener : changeListeners)
+      listener.accept(this);
+  }
+
+  // --- Adjacency ---
+
+  /** The wire driving an input of a component, or null if it is unconnected. */
+  public Wire getDriver(Component dest, int inputIndex) {
+    Wire[] in = drivers.get(dest);
+    return (in != null && inputIndex >= 0 && inputIndex < in.length) ? in[inputIndex] : null;
+  }
 
-      if (wasConnected) {
-        // Reset signal to FALSE (The Bug Fix you already had!)
-        dest.setInput(inputIndex, false);
+  /** Every wire a component drives or is driven by, in O(degree). */
+  public List<Wire> getIncidentWires(Component c) {
+    List<Wire> incident = new ArrayList<>();
+    for (Wire w : c.getAllOutputs()) {
+      if (wireSet.contains(w))
+        incident.add(w);
+    }
+    Wire[] in = drivers.get(c);
+    if (in != null) {
+      for (Wire w : in) {
+        if (w != null && !incident.contains(w))
+          incident.add(w);
+      }
+    }
+    return incident;
+  }
 
-        // RECOMMENDATION: Update component so it visually changes color immediately
-        dest.update();
+  // Drops removed components and wires from the lists
+  private void compact() {
+    if (!deadComponents.isEmpty())
+      components.removeIf(deadComponents::contains);
+    if (!deadWires.isEmpty())
+      wires.removeIf(deadWires::contains);
+    deadComponents.clear();
+    deadWires.clear();
+  }
 
-        // Remove the physical connection
-        w.removeDestination(dest, inputIndex);
-        return;
+  // True if c, or a wire it drives, was removed but is still in the lists
+  private boolean hasDeadEntry(Component c) {
+    if (deadComponents.contains(c))
+      return true;
+    if (!deadWires.isEmpty()) {
+      for (Wire w : c.getAllOutputs()) {
+        if (deadWires.contains(w))
+          return true;
       }
     }
+    return false;
+  }
+
+  private void setDriver(Component dest, int inputIndex, Wire w) {
+    Wire[] in = drivers.get(dest);
+    if (in == null) {
+      in = new Wire[Math.max(inputIndex + 1, dest.getInputCount())];
+      drivers.put(dest, in);
+    } else if (in.length <= inputIndex) {
+      in = Arrays.copyOf(in, inputIndex + 1);
+      drivers.put(dest, in);
+    }
+    in[inputIndex] = w;
+  }
+
+  private void clearDriver(Component dest, int inputIndex, Wire w) {
+    Wire[] in = drivers.get(dest);
+    if (in != null && inputIndex < in.length && in[inputIndex] == w)
+      in[inputIndex] = null;
   }
 
   /**
@@ -152,16 +506,17 @@ public class Circuit {
    */
   public Circuit cloneCircuit() {
     Circuit copy = new Circuit();
+    copy.beginTransaction();
     java.util.Map<Component, Component> oldToNew = new java.util.HashMap<>();
 
-    for (Component original : this.components) {
+    for (Component original : getComponents()) {
       Component clone = original.makeCopy();
       clone.setPosition(original.getX(), original.getY());
       copy.addComponent(clone);
       oldToNew.put(original, clone);
     }
 
-    for (Wire originalWire : this.wires) {
+    for (Wire originalWire : getWires()) {
       Component oldSource = originalWire.getSource();
       if (oldSource == null)
         continue;
@@ -185,21 +540,184 @@ public class Circuit {
         copy.addConnection(newSource, sourceIndex, newDest, pc.inputIndex);
       }
     }
+    copy.commitTransaction();
     return copy;
   }
 
+  // --- Levelization ---
+
+  /**
+   * Makes sure every component has an up-to-date level for levelized
+   * zero-delay evaluation. Cheap when nothing has changed.
+   */
+  public void ensureLevels() {
+    if (levelsDirty) {
+      assignLevels(0);
+      levelsDirty = false;
+    }
+  }
+
+  /**
+   * Topologically sorts the circuit and stores each component's level,
+   * starting at base. Edges leaving flip-flops are ignored, which breaks
+   * every sequential loop; any purely combinational loop left over is
+   * broken at an arbitrary component. A CustomComponent settles its
+   * internals itself, so it counts as a single component.
+   *
+   * @return the number of levels used
+   */
+  int assignLevels(int base) {
+    List<Component> components = getComponents();
+    int n = components.size();
+    Map<Component, Integer> index = new HashMap<>(2 * n);
+    for (int i = 0; i < n; i++)
+      index.put(components.get(i), i);
+
+    // Edges as parallel arrays, then successor lists in one flat array (CSR)
+    int[] from = new int[16];
+    int[] to = new int[16];
+    int edges = 0;
+    int[] inDegree = new int[n];
+    int[] start = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      Component src = components.get(i);
+      if (isFlipFlop(src))
+        continue;
+      for (int k = 0; k < src.getOutputCount(); k++) {
+        Wire w = src.getOutputWire(k);
+        if (w == null)
+          continue;
+        for (Wire.PortConnection pc : w.getDestinations()) {
+          Integer j = index.get(pc.component);
+          if (j == null)
+            continue;
+          if (edges == from.length) {
+            from = Arrays.copyOf(from, 2 * edges);
+            to = Arrays.copyOf(to, 2 * edges);
+          }
+          from[edges] = i;
+          to[edges++] = j;
+          start[i + 1]++;
+          inDegree[j]++;
+        }
+      }
+    }
+    for (int i = 0; i < n; i++)
+      start[i + 1] += start[i];
+    int[] succ = new int[edges];
+    int[] fill = Arrays.copyOf(start, n);
+    for (int e = 0; e < edges; e++)
+      succ[fill[from[e]]++] = to[e];
+
+    return placeLevels(components, base, inDegree, start, succ);
+  }
+
+  // Kahn's algorithm over the CSR graph built by assignLevels
+  private static int placeLevels(List<Component> components, int base, int[] inDegree, int[] start, int[] succ) {
+    int n = components.size();
+    int[] minLevel = new int[n];
+    Arrays.fill(minLevel, base);
+    int[] ready = new int[n]; // Each component is queued at most once
+    int head = 0;
+    int tail = 0;
+    for (int i = 0; i < n; i++) {
+      if (inDegree[i] == 0)
+        ready[tail++] = i;
+    }
+
+    int deepest = base - 1;
+    int cursor = 0; // For breaking combinational loops
+    for (int done = 0; done < n; done++) {
+      if (head == tail) {
+        // Only cycles remain: force the next unvisited component in
+        while (inDegree[cursor] < 0)
+          cursor++;
+        ready[tail++] = cursor;
+      }
+      int c = ready[head++];
+      inDegree[c] = -1;
+
+      int level = minLevel[c];
+      components.get(c).setLevel(level);
+      deepest = Math.max(deepest, level);
+
+      for (int e = start[c]; e < start[c + 1]; e++) {
+        int next = succ[e];
+        minLevel[next] = Math.max(minLevel[next], level + 1);
+        if (inDegree[next] > 0 && --inDegree[next] == 0)
+          ready[tail++] = next;
+      }
+    }
+    return deepest - base + 1;
+  }
+
+  private static boolean isFlipFlop(Component c) {
+    return c instanceof DFlipFlop || c instanceof JKFlipFlop || c instanceof TFlipFlop;
+  }
+
+  // --- Engine ---
+
+  public Simulator getSimulator() {
+    return simulator;
+  }
+
+  /**
+   * Switches this circuit to another engine.
+   * Pending events on our own engine move across with it.
+   * Passing null reverts to this circuit's own engine.
+   */
+  public void setSimulator(Simulator target) {
+    if (target == null)
+      target = ownSimulator;
+    if (target == simulator)
+      return;
+
+    if (simulator == ownSimulator) {
+      target.transferFrom(ownSimulator);
+    }
+    simulator = target;
+
+    compact();
+    for (Component c : components) {
+      c.setSimulator(target);
+    }
+  }
+
   // --- Accessors ---
 
+  /**
+   * The components in the order they were added. Mid-transaction, after
+   * a removal, this is a filtered copy; otherwise a read-only view.
+   */
   public List<Component> getComponents() {
-    return Collections.unmodifiableList(components);
+    if (deadComponents.isEmpty())
+      return Collections.unmodifiableList(components);
+    return components.stream().filter(componentSet::contains).toList();
   }
 
   public List<Wire> getWires() {
-    return Collections.unmodifiableList(wires);
+    if (deadWires.isEmpty())
+      return Collections.unmodifiableList(wires);
+    return wires.stream().filter(wireSet::contains).toList();
   }
 
   public void clear() {
+    compact();
+    for (Component c : components) {
+      if (c.getSimulator() == simulator)
+        c.setSimulator(null);
+      fire(l -> l.componentRemoved(c));
+    }
     components.clear();
+    componentSet.clear();
     wires.clear();
+    wireSet.clear();
+    drivers.clear();
+    clocks.clear();
+    clockedChips.clear();
+    pendingUpdates.clear();
+    if (simulator == ownSimulator)
+      ownSimulator.clear();
+    changed();
   }
 }
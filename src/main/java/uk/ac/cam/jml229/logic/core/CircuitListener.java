@@ -0,0 +1,37 @@
+package uk.ac.cam.jml229.logic.core;
+
+import uk.ac.cam.jml229.logic.components.Component;
+
+/**
+ * Fine-grained notifications of edits to a Circuit, for caches and
+ * spatial indices that want to update incrementally rather than rescan.
+ * Every method defaults to doing nothing.
+ *
+ * Events arrive on the thread making the edit, after it is applied. A
+ * circuit is only ever edited from one thread (in the GUI, the simulation
+ * thread), so listeners run there and must hand off anything Swing-side.
+ * Inside a transaction they are held back and delivered, in order, when
+ * it commits. Each event also advances Circuit.getVersion().
+ */
+public interface CircuitListener {
+
+  default void componentAdded(Component c) {
+  }
+
+  default void componentRemoved(Component c) {
+  }
+
+  /** The component moved, rotated or changed its pins. */
+  default void componentMoved(Component c) {
+  }
+
+  default void connectionAdded(Wire wire, Component dest, int inputIndex) {
+  }
+
+  default void connectionRemoved(Wire wire, Component dest, int inputIndex) {
+  }
+
+  /** The waypoints of one wire segment were added, removed or moved. */
+  default void waypointsChanged(Wire.PortConnection connection) {
+  }
+}
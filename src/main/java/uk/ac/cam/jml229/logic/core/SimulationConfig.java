@@ -0,0 +1,19 @@
+package uk.ac.cam.jml229.logic.core;
+
+/**
+ * Immutable snapshot of the settings the engine needs while propagating.
+ * Read through a plain field on the hot path; a new snapshot is published
+ * whenever the user changes the settings.
+ */
+public record SimulationConfig(boolean propagationDelayEnabled, int gateDelay) {
+
+  public static final SimulationConfig DEFAULTS = new SimulationConfig(true, 1);
+
+  public SimulationConfig withPropagationDelayEnabled(boolean enabled) {
+    return new SimulationConfig(enabled, gateDelay);
+  }
+
+  public SimulationConfig withGateDelay(int delay) {
+    return new SimulationConfig(propagationDelayEnabled, delay);
+  }
+}
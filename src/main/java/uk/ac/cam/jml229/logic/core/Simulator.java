@@ -1,55 +1,606 @@
 package uk.ac.cam.jml229.logic.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Queue;
 
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.seq.Clock;
+import uk.ac.cam.jml229.logic.io.SettingsManager;
+
+/**
+ * Event-driven simulation engine.
+ * Each Circuit owns one instance, so independent circuits can be simulated
+ * side by side (or on separate threads) without sharing a queue.
+ * An instance is not thread-safe; drive it from one thread at a time.
+ *
+ * Events are kept in a timing wheel: one bucket per tick for the next
+ * WHEEL_SIZE ticks, each bucket a FIFO linked list through a pool of
+ * reusable slots. Insert and pop are O(1) and allocation-free once the
+ * pool has grown. Delays beyond the wheel go to a small overflow heap.
+ * A slot holds a Runnable, a wire-to-pin delivery record or an
+ * IndexedAction with its argument, so signal fan-out (and a chip's
+ * internal gates) are scheduled without creating a closure per event.
+ * A bitmap of non-empty buckets lets the engine jump straight to the next
+ * scheduled tick instead of stepping through idle ones.
+ *
+ * Clocks with a period are not queued as events: the engine keeps them
+ * in a short list and fires each edge at its tick. They never count as
+ * pending work, so runUntilStable() stops once the logic between two
+ * edges has settled, while run() and advanceTo() step through edges.
+ */
 public class Simulator {
 
+  private static final int WHEEL_BITS = 10;
+  private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+  private static final int WHEEL_WORDS = WHEEL_SIZE / 64;
+  private static final int NIL = -1;
+
+  /**
+   * Outcome of a bounded run: simulated ticks advanced, events executed,
+   * and whether the queue was empty when it stopped (clock edges still to
+   * come don't count).
+   */
+  public record RunResult(long ticks, long events, boolean stable) {
+  }
+
+  /**
+   * An event taking an int argument, e.g. the gate a chip should evaluate.
+   * One instance serves every argument, so scheduling doesn't allocate.
+   */
+  public interface IndexedAction {
+    void run(int arg);
+  }
+
+  // Far-future event (delay >= WHEEL_SIZE). Rare, so a heap is fine here.
   private static class SimEvent implements Comparable<SimEvent> {
     long tickTime;
+    long seq; // Keeps same-tick events in scheduling order
     Runnable action;
 
-    SimEvent(long tickTime, Runnable action) {
+    SimEvent(long tickTime, long seq, Runnable action) {
       this.tickTime = tickTime;
+      this.seq = seq;
       this.action = action;
     }
 
     @Override
     public int compareTo(SimEvent other) {
-      return Long.compare(this.tickTime, other.tickTime);
+      int c = Long.compare(this.tickTime, other.tickTime);
+      return (c != 0) ? c : Long.compare(this.seq, other.seq);
     }
   }
 
-  private static final Queue<SimEvent> eventQueue = new PriorityQueue<>();
-  private static long currentTick = 0;
+  // --- Wheel Buckets (head/tail slot index per tick) ---
+  private final int[] bucketHead = new int[WHEEL_SIZE];
+  private final int[] bucketTail = new int[WHEEL_SIZE];
+  private final long[] occupied = new long[WHEEL_WORDS]; // 1 bit per non-empty bucket
+
+  // --- Slot Pool ---
+  // A slot is either an action, an indexed action run with slotPin, or
+  // (when both are null) a delivery of slotWire's signal to input slotPin
+  // of slotTarget.
+  private Runnable[] slotAction = new Runnable[256];
+  private IndexedAction[] slotIndexed = new IndexedAction[256];
+  private Wire[] slotWire = new Wire[256];
+  private Component[] slotTarget = new Component[256];
+  private int[] slotPin = new int[256];
+  private int[] slotNext = new int[256];
+  private int slotsUsed = 0; // High-water mark of the pool
+  private int freeSlot = NIL; // Head of the free list
+
+  private final Queue<SimEvent> overflow = new PriorityQueue<>();
+  private long overflowSeq = 0;
+
+  private int pending = 0; // Events currently in the wheel
+  private long currentTick = 0;
+  private long eventsProcessed = 0;
+  private int peakPending = 0; // High-water mark of pending, for metrics
+  private long runNanos = 0; // Wall-clock time spent advancing
+
+  // When set, run() skips idle ticks and returns as soon as nothing is queued
+  private boolean fastForward = false;
+
+  // Settings snapshot read by components on every input change
+  private SimulationConfig config = SettingsManager.getSimulationConfig();
+
+  // --- Levelized Zero-Delay Evaluation ---
+  private boolean levelized = false;
+  private Circuit owner; // Circuit whose levels this engine relies on
+  private final List<List<Component>> dirtyByLevel = new ArrayList<>();
+  private int dirtyCount = 0;
+  private int minDirtyLevel = Integer.MAX_VALUE;
+
+  // Toggle / evaluation counters; null unless profiling is switched on
+  private ActivityProfile profile = null;
+
+  // Free-running clocks and the earliest edge among them (-1 if none)
+  private final List<Clock> clocks = new ArrayList<>();
+  private long nextClockEdge = -1;
+
+  public Simulator() {
+    Arrays.fill(bucketHead, NIL);
+    Arrays.fill(bucketTail, NIL);
+  }
 
-  public static void enqueue(Runnable event) {
+  public void enqueue(Runnable event) {
     schedule(event, 0);
   }
 
-  public static void schedule(Runnable event, int delayTicks) {
-    eventQueue.add(new SimEvent(currentTick + delayTicks, event));
+  public void schedule(Runnable event, int delayTicks) {
+    if (delayTicks < 0)
+      delayTicks = 0;
+
+    if (delayTicks >= WHEEL_SIZE) {
+      overflow.add(new SimEvent(currentTick + delayTicks, overflowSeq++, event));
+      return;
+    }
+    insert((int) ((currentTick + delayTicks) & WHEEL_MASK), event);
+  }
+
+  /** Schedules action.run(arg) after delayTicks, without allocating. */
+  public void schedule(IndexedAction action, int arg, int delayTicks) {
+    if (delayTicks < 0)
+      delayTicks = 0;
+
+    if (delayTicks >= WHEEL_SIZE) {
+      schedule(() -> action.run(arg), delayTicks);
+      return;
+    }
+    int s = link((int) ((currentTick + delayTicks) & WHEEL_MASK));
+    slotIndexed[s] = action;
+    slotPin[s] = arg;
+  }
+
+  /**
+   * Schedules a wire's signal to be delivered to one input pin this tick.
+   * The value is read from the wire when the event runs, matching the old
+   * closure-based fan-out. Nothing is allocated once the pool has grown.
+   */
+  public void enqueueDelivery(Wire wire, Component target, int inputIndex) {
+    int s = link((int) (currentTick & WHEEL_MASK));
+    slotWire[s] = wire;
+    slotTarget[s] = target;
+    slotPin[s] = inputIndex;
+  }
+
+  /**
+   * Advances the simulation by up to maxTicks ticks.
+   * In fast-forward mode, empty ticks are skipped and the call returns
+   * early once the queue is empty.
+   */
+  public void run(int maxTicks) {
+    advance(maxTicks, fastForward, false);
+  }
+
+  /**
+   * Runs (always fast-forwarding) until no events remain or limit ticks of
+   * simulated time have passed, whichever comes first. Clock edges due
+   * before the logic settles are fired; later ones are left for run().
+   */
+  public RunResult runUntilStable(long limit) {
+    long startTick = currentTick;
+    long startEvents = eventsProcessed;
+    advance(limit, true, true);
+    return new RunResult(currentTick - startTick, eventsProcessed - startEvents, isStable());
+  }
+
+  /**
+   * Processes every event due before the given tick and leaves the clock
+   * there, letting idle time pass if the circuit goes quiet first.
+   */
+  public void advanceTo(long tick) {
+    if (tick <= currentTick)
+      return;
+    advance(tick - currentTick, true, false);
+    currentTick = tick;
+  }
+
+  public void setFastForward(boolean enabled) {
+    this.fastForward = enabled;
+  }
+
+  public boolean isFastForward() {
+    return fastForward;
+  }
+
+  public void setLevelized(boolean enabled) {
+    this.levelized = enabled;
+  }
+
+  /**
+   * True when zero-delay input changes should go through markDirty()
+   * instead of updating the component immediately.
+   */
+  public boolean isLevelized() {
+    return levelized;
+  }
+
+  void setOwner(Circuit owner) {
+    this.owner = owner;
+  }
+
+  /**
+   * Queues a component for a single evaluation at its level.
+   * Marking an already-dirty component again is a no-op.
+   */
+  public void markDirty(Component c) {
+    if (c.isMarkedDirty())
+      return;
+    c.setMarkedDirty(true);
+
+    int level = Math.max(0, c.getLevel());
+    while (dirtyByLevel.size() <= level)
+      dirtyByLevel.add(new ArrayList<>());
+    dirtyByLevel.get(level).add(c);
+    dirtyCount++;
+    if (level < minDirtyLevel)
+      minDirtyLevel = level;
+  }
+
+  /**
+   * Switches activity profiling on (starting from zero counts at the
+   * current tick) or off (dropping the counts).
+   */
+  public void setProfiling(boolean enabled) {
+    profile = enabled ? new ActivityProfile(currentTick) : null;
+  }
+
+  /** The counts so far, or null if profiling is off. */
+  public ActivityProfile getProfile() {
+    return profile;
+  }
+
+  public SimulationConfig getConfig() {
+    return config;
+  }
+
+  public void setConfig(SimulationConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * Tick of the earliest pending event or clock edge, or -1 if there is
+   * neither.
+   */
+  public long nextEventTick() {
+    if (dirtyCount > 0)
+      return currentTick;
+    long next = nextWheelTick();
+    if (!overflow.isEmpty()) {
+      long far = Math.max(currentTick, overflow.peek().tickTime);
+      if (next < 0 || far < next)
+        next = far;
+    }
+    if (nextClockEdge >= 0) {
+      long edge = Math.max(currentTick, nextClockEdge);
+      if (next < 0 || edge < next)
+        next = edge;
+    }
+    return next;
+  }
+
+  // --- Clocks ---
+
+  /** Starts firing a clock's edges. Called by Clock when it gets a period. */
+  public void addClock(Clock clock) {
+    if (!clocks.contains(clock))
+      clocks.add(clock);
+    updateNextClockEdge();
+  }
+
+  public void removeClock(Clock clock) {
+    if (clocks.remove(clock))
+      updateNextClockEdge();
+  }
+
+  private void updateNextClockEdge() {
+    nextClockEdge = -1;
+    for (Clock c : clocks) {
+      long t = c.nextEdge(currentTick);
+      if (nextClockEdge < 0 || t < nextClockEdge)
+        nextClockEdge = t;
+    }
   }
 
-  public static void run(int maxTicks) {
-    for (int i = 0; i < maxTicks; i++) {
-      while (!eventQueue.isEmpty() && eventQueue.peek().tickTime <= currentTick) {
-        eventQueue.poll().action.run();
+  // Fires every clock with an edge since nextClockEdge, which is normally
+  // this tick but can be earlier if a clock was added or retimed by an
+  // event on the tick just gone. A late clock takes the level due now.
+  private void fireClocks() {
+    long due = nextClockEdge;
+    // Index loop: an edge handler may add or remove clocks
+    for (int i = 0; i < clocks.size(); i++) {
+      Clock c = clocks.get(i);
+      if (c.nextEdge(due) <= currentTick)
+        c.edge(currentTick);
+    }
+    nextClockEdge = -1;
+    for (Clock c : clocks) {
+      long t = c.nextEdge(currentTick + 1);
+      if (nextClockEdge < 0 || t < nextClockEdge)
+        nextClockEdge = t;
+    }
+  }
+
+  private void advance(long maxTicks, boolean skipIdle, boolean untilSettled) {
+    long start = System.nanoTime();
+    try {
+      advanceTicks(maxTicks, skipIdle, untilSettled);
+    } finally {
+      runNanos += System.nanoTime() - start;
+    }
+  }
+
+  private void advanceTicks(long maxTicks, boolean skipIdle, boolean untilSettled) {
+    if (levelized && owner != null)
+      owner.ensureLevels();
+
+    long end = currentTick + maxTicks;
+    while (currentTick < end) {
+      if (untilSettled && isStable())
+        return; // Only clock edges left, if anything
+      if (skipIdle) {
+        long next = nextEventTick();
+        if (next < 0)
+          return; // Stable: don't burn the rest of the budget
+        if (next >= end) {
+          currentTick = end;
+          return;
+        }
+        currentTick = next;
       }
+      if (nextClockEdge >= 0 && currentTick >= nextClockEdge)
+        fireClocks();
+      processTick();
       currentTick++;
     }
   }
 
-  public static void clear() {
-    eventQueue.clear();
+  private void processTick() {
+    // Pull in far events that are now due
+    while (!overflow.isEmpty() && overflow.peek().tickTime <= currentTick) {
+      insert((int) (currentTick & WHEEL_MASK), overflow.poll().action);
+    }
+
+    // Alternate between delivering this tick's events and evaluating the
+    // lowest dirty component, so each level sees fully settled inputs.
+    int b = (int) (currentTick & WHEEL_MASK);
+    do {
+      drainBucket(b);
+    } while (evaluateNextDirty());
+    occupied[b >>> 6] &= ~(1L << b);
+  }
+
+  private void drainBucket(int b) {
+    // Zero-delay events scheduled while draining land at the tail
+    // and still run this tick.
+    int s;
+    while ((s = bucketHead[b]) != NIL) {
+      bucketHead[b] = slotNext[s];
+      if (bucketHead[b] == NIL)
+        bucketTail[b] = NIL;
+
+      Runnable action = slotAction[s];
+      IndexedAction indexed = slotIndexed[s];
+      eventsProcessed++;
+      if (action != null) {
+        release(s);
+        action.run();
+      } else if (indexed != null) {
+        int arg = slotPin[s];
+        release(s);
+        indexed.run(arg);
+      } else {
+        Wire wire = slotWire[s];
+        Component target = slotTarget[s];
+        int pin = slotPin[s];
+        release(s);
+        target.setInput(pin, wire.getSignal());
+      }
+    }
+  }
+
+  private boolean evaluateNextDirty() {
+    if (dirtyCount == 0)
+      return false;
+    while (dirtyByLevel.get(minDirtyLevel).isEmpty())
+      minDirtyLevel++;
+
+    List<Component> bucket = dirtyByLevel.get(minDirtyLevel);
+    Component c = bucket.remove(bucket.size() - 1);
+    if (--dirtyCount == 0)
+      minDirtyLevel = Integer.MAX_VALUE;
+
+    c.setMarkedDirty(false);
+    eventsProcessed++;
+    if (profile != null)
+      profile.evaluated(c);
+    c.update();
+    return true;
+  }
+
+  private long nextWheelTick() {
+    if (pending == 0)
+      return -1;
+
+    int start = (int) (currentTick & WHEEL_MASK);
+    int startWord = start >>> 6;
+
+    // Scan forward from the current bucket, wrapping round once
+    for (int i = 0; i <= WHEEL_WORDS; i++) {
+      int word = (startWord + i) % WHEEL_WORDS;
+      long bits = occupied[word];
+      if (i == 0)
+        bits &= -1L << start;
+      else if (i == WHEEL_WORDS)
+        bits &= ~(-1L << start);
+
+      if (bits != 0) {
+        int b = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return currentTick + ((b - start) & WHEEL_MASK);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Moves every pending event from another engine into this one,
+   * keeping each event's remaining delay.
+   * Used when one circuit's components (e.g. a pasted selection) are
+   * adopted by another circuit.
+   */
+  public void transferFrom(Simulator other) {
+    if (other == null || other == this)
+      return;
+
+    // Walk the other wheel in time order, starting from its current tick
+    for (int offset = 0; offset < WHEEL_SIZE && other.pending > 0; offset++) {
+      int b = (int) ((other.currentTick + offset) & WHEEL_MASK);
+      int s;
+      while ((s = other.bucketHead[b]) != NIL) {
+        other.bucketHead[b] = other.slotNext[s];
+        int t = link((int) ((currentTick + offset) & WHEEL_MASK));
+        slotAction[t] = other.slotAction[s];
+        slotIndexed[t] = other.slotIndexed[s];
+        slotWire[t] = other.slotWire[s];
+        slotTarget[t] = other.slotTarget[s];
+        slotPin[t] = other.slotPin[s];
+        other.release(s);
+      }
+      other.bucketTail[b] = NIL;
+      other.occupied[b >>> 6] &= ~(1L << b);
+    }
+
+    while (!other.overflow.isEmpty()) {
+      SimEvent e = other.overflow.poll();
+      long remaining = Math.max(0, e.tickTime - other.currentTick);
+      schedule(e.action, (int) Math.min(Integer.MAX_VALUE, remaining));
+    }
+
+    for (List<Component> bucket : other.dirtyByLevel) {
+      for (Component c : bucket) {
+        c.setMarkedDirty(false);
+        markDirty(c);
+      }
+      bucket.clear();
+    }
+    other.dirtyCount = 0;
+    other.minDirtyLevel = Integer.MAX_VALUE;
+  }
+
+  public void clear() {
+    Arrays.fill(bucketHead, NIL);
+    Arrays.fill(bucketTail, NIL);
+    Arrays.fill(occupied, 0L);
+    Arrays.fill(slotAction, 0, slotsUsed, null);
+    Arrays.fill(slotIndexed, 0, slotsUsed, null);
+    Arrays.fill(slotWire, 0, slotsUsed, null);
+    Arrays.fill(slotTarget, 0, slotsUsed, null);
+    slotsUsed = 0;
+    freeSlot = NIL;
+    pending = 0;
+    overflow.clear();
+    for (List<Component> bucket : dirtyByLevel) {
+      for (Component c : bucket)
+        c.setMarkedDirty(false);
+      bucket.clear();
+    }
+    dirtyCount = 0;
+    minDirtyLevel = Integer.MAX_VALUE;
     currentTick = 0;
+    if (profile != null)
+      profile = new ActivityProfile(0);
+    updateNextClockEdge();
   }
 
-  public static boolean isStable() {
-    return eventQueue.isEmpty();
+  public boolean isStable() {
+    return pending == 0 && overflow.isEmpty() && dirtyCount == 0;
   }
 
-  public static long getTick() {
+  public long getTick() {
     return currentTick;
   }
+
+  public long getEventsProcessed() {
+    return eventsProcessed;
+  }
+
+  /** Events waiting in the queue, including components marked dirty. */
+  public int getQueueDepth() {
+    return pending + overflow.size() + dirtyCount;
+  }
+
+  /**
+   * Most events the wheel has held at once since creation or the last
+   * resetPeakQueueDepth(). Far-future events and dirty marks aren't
+   * counted.
+   */
+  public int getPeakQueueDepth() {
+    return peakPending;
+  }
+
+  public void resetPeakQueueDepth() {
+    peakPending = pending;
+  }
+
+  /** Total wall-clock time spent in run(), runUntilStable() and advanceTo(). */
+  public long getRunNanos() {
+    return runNanos;
+  }
+
+  // --- Slot Pool Helpers ---
+
+  private void insert(int bucket, Runnable action) {
+    int s = link(bucket);
+    slotAction[s] = action;
+  }
+
+  // Takes a free slot and appends it to the bucket's list
+  private int link(int bucket) {
+    int s = allocate();
+    slotNext[s] = NIL;
+
+    if (bucketTail[bucket] == NIL) {
+      bucketHead[bucket] = s;
+    } else {
+      slotNext[bucketTail[bucket]] = s;
+    }
+    bucketTail[bucket] = s;
+    occupied[bucket >>> 6] |= 1L << bucket;
+    if (++pending > peakPending)
+      peakPending = pending;
+    return s;
+  }
+
+  private int allocate() {
+    if (freeSlot != NIL) {
+      int s = freeSlot;
+      freeSlot = slotNext[s];
+      return s;
+    }
+    if (slotsUsed == slotAction.length) {
+      int newSize = slotAction.length * 2;
+      slotAction = Arrays.copyOf(slotAction, newSize);
+      slotIndexed = Arrays.copyOf(slotIndexed, newSize);
+      slotWire = Arrays.copyOf(slotWire, newSize);
+      slotTarget = Arrays.copyOf(slotTarget, newSize);
+      slotPin = Arrays.copyOf(slotPin, newSize);
+      slotNext = Arrays.copyOf(slotNext, newSize);
+    }
+    return slotsUsed++;
+  }
+
+  private void release(int s) {
+    // Don't hold on to finished work
+    slotAction[s] = null;
+    slotIndexed[s] = null;
+    slotWire[s] = null;
+    slotTarget[s] = null;
+    slotNext[s] = freeSlot;
+    freeSlot = s;
+    pending--;
+  }
 }
@@ -10,6 +10,9 @@ public class Wire {
   private Component source;
   private List<PortConnection> destinations = new ArrayList<>();
 
+  // Slot in the engine's ActivityProfile, if it has counted this wire
+  int activityId = 0;
+
   public Wire(Component source) {
     this.source = source;
   }
@@ -36,14 +39,31 @@ public class Wire {
     }
     signal = newSignal;
 
-    for (PortConnection pc : destinations) {
-      // Capture the state and the target in a lambda
-      Simulator.enqueue(() -> {
+    // Schedule through the engine of the circuit that owns the driver.
+    // A detached wire (no engine yet) delivers immediately.
+    Simulator sim = (source != null) ? source.getSimulator() : null;
+    ActivityProfile profile = (sim != null) ? sim.getProfile() : null;
+    if (profile != null)
+      profile.toggled(this);
+
+    for (int i = 0; i < destinations.size(); i++) {
+      PortConnection pc = destinations.get(i);
+      if (sim == null) {
         pc.component.setInput(pc.inputIndex, signal);
-      });
+      } else {
+        sim.enqueueDelivery(this, pc.component, pc.inputIndex);
+      }
     }
   }
 
+  /**
+   * Overwrites the signal without notifying destinations.
+   * Used when a compiled netlist copies its results back to the circuit.
+   */
+  public void syncSignal(boolean value) {
+    signal = value;
+  }
+
   public void setSource(Component c) {
     source = c;
   }
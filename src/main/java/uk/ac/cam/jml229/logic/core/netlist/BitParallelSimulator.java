@@ -0,0 +1,189 @@
+package uk.ac.cam.jml229.logic.core.netlist;
+
+import uk.ac.cam.jml229.logic.components.Component;
+
+/**
+ * Zero-delay simulator that runs 64 independent copies of a Netlist at once.
+ * Every net holds a long, and bit k of that long is the net's value in
+ * lane k. Each gate is therefore one bitwise operation over all 64 lanes,
+ * which suits exhaustive truth tables and batches of regression vectors.
+ *
+ * Flip-flops keep their stored bit and last clock level per lane, so each
+ * lane sees its own rising edges. Gates are swept in the netlist's
+ * topological order until no net changes; a purely combinational
+ * circuit settles in a single sweep.
+ * Not thread-safe.
+ */
+public class BitParallelSimulator {
+
+  public static final int LANES = 64;
+
+  // Lane patterns for the low 6 bits of a 64-vector block:
+  // bit b of vector k is ((k >> b) & 1)
+  private static final long[] LOW_PATTERNS = {
+      0xAAAAAAAAAAAAAAAAL,
+      0xCCCCCCCCCCCCCCCCL,
+      0xF0F0F0F0F0F0F0F0L,
+      0xFF00FF00FF00FF00L,
+      0xFFFF0000FFFF0000L,
+      0xFFFFFFFF00000000L
+  };
+
+  private final Netlist nl;
+  private final long[] nets;
+  private final long[] state;
+  private final long[] lastClock;
+  private long evaluations = 0;
+
+  public BitParallelSimulator(Netlist netlist) {
+    this.nl = netlist;
+    this.nets = new long[nl.netCount];
+    this.state = new long[nl.gateCount];
+    this.lastClock = new long[nl.gateCount];
+    reset();
+  }
+
+  /** Puts every lane back to the compiled circuit's state. */
+  public void reset() {
+    for (int n = 0; n < nl.netCount; n++)
+      nets[n] = Netlist.getBit(nl.initialNets, n) ? -1L : 0L;
+    for (int g = 0; g < nl.gateCount; g++) {
+      state[g] = Netlist.getBit(nl.initialState, g) ? -1L : 0L;
+      lastClock[g] = Netlist.getBit(nl.initialClock, g) ? -1L : 0L;
+    }
+  }
+
+  /**
+   * Lane mask for input bit b when lane k carries vector (firstVector + k).
+   * firstVector must be a multiple of 64.
+   */
+  public static long exhaustiveLanes(int bit, long firstVector) {
+    if (bit < 6)
+      return LOW_PATTERNS[bit];
+    return ((firstVector >>> bit) & 1L) != 0 ? -1L : 0L;
+  }
+
+  public Netlist getNetlist() {
+    return nl;
+  }
+
+  // --- Stimulus ---
+
+  /** Sets a Switch in every lane at once (bit k = lane k). */
+  public void setSwitchLanes(int gate, long lanes) {
+    state[gate] = lanes;
+    drive(gate, 0, lanes);
+  }
+
+  public void setSwitchLanes(Component sw, long lanes) {
+    setSwitchLanes(requireGate(sw), lanes);
+  }
+
+  /** Toggles every Clock in every lane, like Circuit.tick(). */
+  public void tickClocks() {
+    for (int g = 0; g < nl.gateCount; g++) {
+      if (nl.type[g] == Netlist.CLOCK) {
+        state[g] = ~state[g];
+        drive(g, 0, state[g]);
+      }
+    }
+  }
+
+  // --- Running ---
+
+  /**
+   * Sweeps the gates in level order until nothing changes, or maxSweeps
+   * is reached (an oscillating loop never settles).
+   *
+   * @return the number of sweeps taken, or -1 if it did not settle
+   */
+  public int settle(int maxSweeps) {
+    int[] order = nl.order;
+    for (int sweep = 1; sweep <= maxSweeps; sweep++) {
+      boolean changed = false;
+      for (int g : order)
+        changed |= evaluate(g);
+      if (!changed)
+        return sweep;
+    }
+    return -1;
+  }
+
+  public long getEvaluations() {
+    return evaluations;
+  }
+
+  // --- Results ---
+
+  public long getNetLanes(int net) {
+    return (net >= 0) ? nets[net] : 0L;
+  }
+
+  /** Lanes seen on an input pin, e.g. pin 0 of an OutputProbe. */
+  public long getInputLanes(int gate, int pin) {
+    return getNetLanes(nl.getInputNet(gate, pin));
+  }
+
+  public long getInputLanes(Component c, int pin) {
+    return getInputLanes(requireGate(c), pin);
+  }
+
+  public long getStateLanes(int gate) {
+    return state[gate];
+  }
+
+  // --- Evaluation ---
+
+  private boolean evaluate(int g) {
+    evaluations++;
+    byte type = nl.type[g];
+    long out;
+    if (GateLogic.isCombinational(type)) {
+      out = GateLogic.start(type);
+      for (int i = nl.inputStart[g]; i < nl.inputStart[g + 1]; i++)
+        out = GateLogic.fold(type, out, read(i));
+      out = GateLogic.finish(type, out);
+    } else if (Netlist.isFlipFlop(type)) {
+      return evaluateFlipFlop(g, type, nl.inputStart[g]);
+    } else if (type == Netlist.SWITCH || type == Netlist.CLOCK) {
+      out = state[g];
+    } else {
+      return false; // Passive
+    }
+    return drive(g, 0, out);
+  }
+
+  private boolean evaluateFlipFlop(int g, byte type, int in) {
+    long clk = read(in + 1);
+    long k = (type == Netlist.JK_FF) ? read(in + 2) : 0L;
+    state[g] = GateLogic.clock(type, state[g], lastClock[g], clk, read(in), k);
+    lastClock[g] = clk;
+
+    boolean changed = drive(g, 0, state[g]);
+    changed |= drive(g, 1, ~state[g]);
+    return changed;
+  }
+
+  private long read(int inputSlot) {
+    int net = nl.inputNet[inputSlot];
+    return (net >= 0) ? nets[net] : 0L;
+  }
+
+  private boolean drive(int g, int pin, long lanes) {
+    int idx = nl.outputStart[g] + pin;
+    if (idx >= nl.outputStart[g + 1])
+      return false;
+    int net = nl.outputNet[idx];
+    if (net < 0 || nets[net] == lanes)
+      return false;
+    nets[net] = lanes;
+    return true;
+  }
+
+  private int requireGate(Component c) {
+    int g = nl.indexOf(c);
+    if (g < 0)
+      throw new IllegalArgumentException("Component '" + c.getName() + "' is not in this netlist");
+    return g;
+  }
+}
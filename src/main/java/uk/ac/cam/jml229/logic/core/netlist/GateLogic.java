@@ -0,0 +1,56 @@
+package uk.ac.cam.jml229.logic.core.netlist;
+
+/**
+ * The gate and flip-flop rules, written once for every netlist engine so
+ * they can't drift apart. Engines keep their own storage and only read
+ * inputs and drive outputs themselves.
+ *
+ * Values are lane words, as in BitParallelSimulator: bit k is the value
+ * in lane k. Single-copy engines pass -1L for true and 0L for false, and
+ * test the result against 0.
+ */
+final class GateLogic {
+
+  private GateLogic() {
+  }
+
+  /** BUFFER up to NOR: the output is a function of the inputs alone. */
+  static boolean isCombinational(byte type) {
+    return type >= Netlist.BUFFER && type <= Netlist.NOR;
+  }
+
+  /** A combinational gate's value before any input is folded in. */
+  static long start(byte type) {
+    return (type == Netlist.AND || type == Netlist.NAND) ? -1L : 0L;
+  }
+
+  /** Folds one more input into a combinational gate's value. */
+  static long fold(byte type, long acc, long in) {
+    return switch (type) {
+      case Netlist.AND, Netlist.NAND -> acc & in;
+      case Netlist.XOR -> acc ^ in;
+      default -> acc | in; // OR, NOR, and the one input of BUFFER and NOT
+    };
+  }
+
+  /** A combinational gate's output, from its folded inputs. */
+  static long finish(byte type, long acc) {
+    return (type == Netlist.NOT || type == Netlist.NAND || type == Netlist.NOR) ? ~acc : acc;
+  }
+
+  /**
+   * A flip-flop's stored bit after its clock input reads clk. Lanes where
+   * the clock rose from lastClock take the next state, same rules as the
+   * component classes; the rest hold q. data is D, J or T, and k is only
+   * read by a JK flip-flop.
+   */
+  static long clock(byte type, long q, long lastClock, long clk, long data, long k) {
+    long edge = clk & ~lastClock;
+    long next = switch (type) {
+      case Netlist.D_FF -> data;
+      case Netlist.JK_FF -> (data & ~q) | (~k & q); // J=K=1 toggles, J sets, K resets, otherwise hold
+      default -> q ^ data;
+    };
+    return (q & ~edge) | (next & edge);
+  }
+}
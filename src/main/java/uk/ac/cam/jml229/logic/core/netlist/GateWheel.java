@@ -0,0 +1,123 @@
+package uk.ac.cam.jml229.logic.core.netlist;
+
+import java.util.Arrays;
+
+/**
+ * Int-only timing wheel of pending gate evaluations.
+ * Buckets are FIFO lists threaded through a pooled slot array, and an
+ * occupied bitmap lets nextTick() skip idle ticks a word at a time.
+ * The wheel is sized above the largest delay, so no overflow queue is needed.
+ *
+ * Duplicate suppression uses a queuedFor array indexed by gate. Several
+ * wheels may share one array as long as each gate only ever goes into
+ * the same wheel.
+ */
+final class GateWheel {
+
+  private static final int NIL = -1;
+
+  private final long[] queuedFor; // Tick each gate was last queued for
+  private final int mask;
+  private final int[] bucketHead;
+  private final int[] bucketTail;
+  private final long[] occupied;
+  private int[] slotGate = new int[256];
+  private int[] slotNext = new int[256];
+  private int slotsUsed = 0;
+  private int freeSlot = NIL;
+  private int pending = 0;
+
+  GateWheel(int maxDelay, long[] queuedFor) {
+    this.queuedFor = queuedFor;
+    int size = Math.max(64, Integer.highestOneBit(maxDelay) << 1);
+    this.mask = size - 1;
+    this.bucketHead = new int[size];
+    this.bucketTail = new int[size];
+    this.occupied = new long[size >>> 6];
+    Arrays.fill(bucketHead, NIL);
+    Arrays.fill(bucketTail, NIL);
+  }
+
+  /** Queues gate g for tick, unless it is already queued for that tick. */
+  void queue(int g, long tick) {
+    if (queuedFor[g] == tick)
+      return;
+    queuedFor[g] = tick;
+
+    int s;
+    if (freeSlot != NIL) {
+      s = freeSlot;
+      freeSlot = slotNext[s];
+    } else {
+      if (slotsUsed == slotGate.length) {
+        slotGate = Arrays.copyOf(slotGate, slotsUsed * 2);
+        slotNext = Arrays.copyOf(slotNext, slotsUsed * 2);
+      }
+      s = slotsUsed++;
+    }
+    slotGate[s] = g;
+    slotNext[s] = NIL;
+
+    int b = (int) (tick & mask);
+    if (bucketTail[b] == NIL)
+      bucketHead[b] = s;
+    else
+      slotNext[bucketTail[b]] = s;
+    bucketTail[b] = s;
+    occupied[b >>> 6] |= 1L << b;
+    pending++;
+  }
+
+  /**
+   * Removes the next gate due at tick, or returns -1 once that bucket is
+   * empty. A popped gate may be queued for the same tick again.
+   */
+  int pop(long tick) {
+    int b = (int) (tick & mask);
+    int s = bucketHead[b];
+    if (s == NIL) {
+      occupied[b >>> 6] &= ~(1L << b);
+      return NIL;
+    }
+    bucketHead[b] = slotNext[s];
+    if (bucketHead[b] == NIL)
+      bucketTail[b] = NIL;
+    int g = slotGate[s];
+    slotNext[s] = freeSlot;
+    freeSlot = s;
+    pending--;
+    if (queuedFor[g] == tick)
+      queuedFor[g] = -1L;
+    return g;
+  }
+
+  boolean hasEventsAt(long tick) {
+    return bucketHead[(int) (tick & mask)] != NIL;
+  }
+
+  /** First tick at or after now with a queued gate, or -1 if the wheel is empty. */
+  long nextTick(long now) {
+    if (pending == 0)
+      return -1;
+    int words = occupied.length;
+    int start = (int) (now & mask);
+    int startWord = start >>> 6;
+    for (int i = 0; i <= words; i++) {
+      int word = (startWord + i) % words;
+      long bits = occupied[word];
+      if (i == 0)
+        bits &= -1L << start;
+      else if (i == words)
+        bits &= ~(-1L << start);
+      if (bits != 0) {
+        int b = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return now + ((b - start) & mask);
+      }
+    }
+    return -1;
+  }
+
+  boolean isEmpty() {
+    return pending == 0;
+  }
+}
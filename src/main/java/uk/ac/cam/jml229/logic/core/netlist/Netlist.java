@@ -0,0 +1,611 @@
+package uk.ac.cam.jml229.logic.core.netlist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.cam.jml229.logic.components.ChipDefinition;
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.CustomComponent;
+import uk.ac.cam.jml229.logic.components.gates.*;
+import uk.ac.cam.jml229.logic.components.io.*;
+import uk.ac.cam.jml229.logic.components.misc.TextLabel;
+import uk.ac.cam.jml229.logic.components.seq.*;
+import uk.ac.cam.jml229.logic.core.Circuit;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
+import uk.ac.cam.jml229.logic.core.Wire;
+
+/**
+ * A Circuit lowered into flat, int-indexed arrays for fast simulation.
+ * Every Component becomes a gate index and every Wire a net index;
+ * CustomComponents are inlined, so the netlist is always flat.
+ * Connectivity is stored CSR-style: the inputs of gate g are
+ * inputNet[inputStart[g] .. inputStart[g + 1]), and likewise for outputs
+ * and for the gates each net fans out to.
+ *
+ * A Netlist is immutable once compiled; simulation state lives in
+ * NetlistSimulator, so one Netlist can back several simulators.
+ */
+public final class Netlist {
+
+  // --- Gate Type Codes ---
+  public static final byte PASSIVE = 0; // Displays, labels: inputs only
+  public static final byte SWITCH = 1;
+  public static final byte CLOCK = 2;
+  public static final byte BUFFER = 3; // Also OutputProbe
+  public static final byte NOT = 4;
+  public static final byte AND = 5;
+  public static final byte OR = 6;
+  public static final byte XOR = 7;
+  public static final byte NAND = 8;
+  public static final byte NOR = 9;
+  public static final byte D_FF = 10;
+  public static final byte JK_FF = 11;
+  public static final byte T_FF = 12;
+
+  public static final int UNCONNECTED = -1;
+  public static final int DEFAULT_DELAY = -1;
+
+  // --- Gates ---
+  final int gateCount;
+  final byte[] type;
+  final int[] customDelay; // DEFAULT_DELAY = use the global gate delay
+  final int[] inputStart;
+  final int[] inputNet;
+  final int[] outputStart;
+  final int[] outputNet;
+
+  // --- Nets ---
+  final int netCount;
+  final int[] fanoutStart;
+  final int[] fanoutGate;
+
+  // --- Topological Order (edges out of flip-flops ignored) ---
+  final int[] level;
+  final int[] order; // Gate indices sorted by level
+  final int[] rank; // Position of each gate in order
+
+  // --- Initial State (copied from the object model at compile time) ---
+  final long[] initialNets;
+  final long[] initialState; // Switch / Clock / flip-flop Q
+  final long[] initialClock; // Last clock level seen by flip-flops
+  final long[] initialLagging; // Gates with an input pin the object engine hadn't yet delivered
+
+  // --- Mapping back to the object model ---
+  // Gates and nets inlined from a chip's shared definition have no object
+  // of their own (null here); their values go back to the chip's state.
+  final Component[] components;
+  final Wire[] wires;
+  private final Map<Component, Integer> gateIndex;
+  private final Map<Wire, Integer> netIndex;
+  private final List<ChipSpec> chips;
+
+  private Netlist(Builder b) {
+    this.gateCount = b.gates.size();
+    this.netCount = b.wires.size();
+    this.components = new Component[gateCount];
+    this.wires = b.wires.toArray(new Wire[0]);
+    this.gateIndex = b.gateIndex;
+    this.netIndex = b.netIndex;
+    this.chips = b.chips;
+
+    this.type = new byte[gateCount];
+    this.customDelay = new int[gateCount];
+    this.inputStart = new int[gateCount + 1];
+    this.outputStart = new int[gateCount + 1];
+    this.initialState = new long[words(gateCount)];
+    this.initialClock = new long[words(gateCount)];
+    this.initialLagging = new long[words(gateCount)];
+    this.initialNets = Arrays.copyOf(b.netValues.toLongArray(), words(netCount));
+
+    // Pass 1: types and CSR offsets
+    for (int g = 0; g < gateCount; g++) {
+      GateSpec spec = b.gates.get(g);
+      components[g] = spec.component();
+      type[g] = spec.type();
+      customDelay[g] = spec.delay();
+      inputStart[g + 1] = inputStart[g] + spec.inputs().length;
+      outputStart[g + 1] = outputStart[g] + spec.outputs().length;
+      setBit(initialState, g, spec.state());
+      setBit(initialClock, g, spec.lastClock());
+      setBit(initialLagging, g, spec.lagging());
+    }
+
+    // Pass 2: pin -> net, counting each gate once per net it reads
+    this.inputNet = new int[inputStart[gateCount]];
+    this.outputNet = new int[outputStart[gateCount]];
+    int[] fanoutCount = new int[netCount];
+    int[] lastReader = new int[netCount];
+    Arrays.fill(lastReader, -1);
+    for (int g = 0; g < gateCount; g++) {
+      GateSpec spec = b.gates.get(g);
+      System.arraycopy(spec.outputs(), 0, outputNet, outputStart[g], spec.outputs().length);
+      System.arraycopy(spec.inputs(), 0, inputNet, inputStart[g], spec.inputs().length);
+      for (int n : spec.inputs()) {
+        if (n >= 0 && lastReader[n] != g) {
+          lastReader[n] = g;
+          fanoutCount[n]++;
+        }
+      }
+    }
+
+    // Pass 3: net fan-out
+    this.fanoutStart = new int[netCount + 1];
+    for (int n = 0; n < netCount; n++)
+      fanoutStart[n + 1] = fanoutStart[n] + fanoutCount[n];
+    this.fanoutGate = new int[fanoutStart[netCount]];
+    int[] fill = Arrays.copyOf(fanoutStart, netCount);
+    Arrays.fill(lastReader, -1);
+    for (int g = 0; g < gateCount; g++) {
+      for (int i = inputStart[g]; i < inputStart[g + 1]; i++) {
+        int n = inputNet[i];
+        if (n >= 0 && lastReader[n] != g) {
+          lastReader[n] = g;
+          fanoutGate[fill[n]++] = g;
+        }
+      }
+    }
+
+    this.level = new int[gateCount];
+    this.order = new int[gateCount];
+    this.rank = new int[gateCount];
+    levelize();
+    for (int i = 0; i < gateCount; i++)
+      rank[order[i]] = i;
+  }
+
+  // Kahn's algorithm over gate -> gate edges. Flip-flop outputs don't count
+  // as dependencies, and leftover combinational loops are broken in index order.
+  private void levelize() {
+    int[] inDegree = new int[gateCount];
+    for (int g = 0; g < gateCount; g++) {
+      if (isFlipFlop(type[g]))
+        continue;
+      for (int o = outputStart[g]; o < outputStart[g + 1]; o++) {
+        int n = outputNet[o];
+        if (n < 0)
+          continue;
+        for (int i = fanoutStart[n]; i < fanoutStart[n + 1]; i++)
+          inDegree[fanoutGate[i]]++;
+      }
+    }
+
+    int head = 0, tail = 0, cursor = 0;
+    boolean[] placed = new boolean[gateCount];
+    for (int g = 0; g < gateCount; g++) {
+      if (inDegree[g] == 0)
+        order[tail++] = g;
+    }
+
+    while (head < gateCount) {
+      if (head == tail) {
+        // Only loops remain: force the next unplaced gate in
+        while (placed[cursor] || inDegree[cursor] == 0)
+          cursor++;
+        inDegree[cursor] = 0;
+        order[tail++] = cursor;
+      }
+      int g = order[head++];
+      placed[g] = true;
+      if (isFlipFlop(type[g]))
+        continue;
+      for (int o = outputStart[g]; o < outputStart[g + 1]; o++) {
+        int n = outputNet[o];
+        if (n < 0)
+          continue;
+        for (int i = fanoutStart[n]; i < fanoutStart[n + 1]; i++) {
+          int next = fanoutGate[i];
+          if (placed[next])
+            continue; // Loop back-edge
+          level[next] = Math.max(level[next], level[g] + 1);
+          if (inDegree[next] > 0 && --inDegree[next] == 0)
+            order[tail++] = next;
+        }
+      }
+    }
+  }
+
+  /**
+   * Compiles a circuit. The circuit should be settled (no pending events),
+   * since net and flip-flop values are copied from it as the start state.
+   *
+   * CustomComponents are inlined, however deeply nested, by copying their
+   * definition's netlist. A chip's input Switches become one-input buffers
+   * carrying the chip's delay, and its OutputProbes drive the chip's output
+   * wires directly, so there are no bridging events at the boundary.
+   * Inlined gates keep their own delays and start from the chip
+   * instance's state, and syncToCircuit() writes their values back to it.
+   *
+   * @throws IllegalArgumentException if the circuit contains a component
+   *                                  the netlist cannot represent
+   */
+  public static Netlist compile(Circuit circuit) {
+    Builder b = new Builder();
+    b.addCircuit(circuit);
+    return new Netlist(b);
+  }
+
+  // --- Queries ---
+
+  public int getGateCount() {
+    return gateCount;
+  }
+
+  public int getNetCount() {
+    return netCount;
+  }
+
+  public byte getType(int gate) {
+    return type[gate];
+  }
+
+  /**
+   * Gate index of a component, or -1 if it isn't part of this netlist.
+   * Inlined CustomComponents have no gate of their own.
+   */
+  public int indexOf(Component c) {
+    Integer g = gateIndex.get(c);
+    return (g != null) ? g : -1;
+  }
+
+  /** Net index of a wire, or -1 if it isn't part of this netlist. */
+  public int indexOf(Wire w) {
+    Integer n = netIndex.get(w);
+    return (n != null) ? n : -1;
+  }
+
+  /** The component behind a gate, or null for a gate inlined from a chip. */
+  public Component getComponent(int gate) {
+    return components[gate];
+  }
+
+  /** The wire behind a net, or null for a net inside an inlined chip. */
+  public Wire getWire(int net) {
+    return wires[net];
+  }
+
+  // Inlined chip instances, whose gates are numbered consecutively
+  int getChipCount() {
+    return chips.size();
+  }
+
+  int getChipGateStart(int chip) {
+    return chips.get(chip).gateBase();
+  }
+
+  int getChipGateEnd(int chip) {
+    ChipSpec spec = chips.get(chip);
+    return spec.gateBase() + spec.gateCount();
+  }
+
+  /** Components by gate index (null entries for gates inlined from chips). */
+  public List<Component> getComponents() {
+    return Collections.unmodifiableList(Arrays.asList(components));
+  }
+
+  public int getInputCount(int gate) {
+    return inputStart[gate + 1] - inputStart[gate];
+  }
+
+  public int getOutputCount(int gate) {
+    return outputStart[gate + 1] - outputStart[gate];
+  }
+
+  /** Net feeding an input pin, or UNCONNECTED. */
+  public int getInputNet(int gate, int pin) {
+    return inputNet[inputStart[gate] + pin];
+  }
+
+  /** Net driven by an output pin, or UNCONNECTED. */
+  public int getOutputNet(int gate, int pin) {
+    return outputNet[outputStart[gate] + pin];
+  }
+
+  /** How many gate input pins read a net. */
+  public int getFanoutCount(int net) {
+    return fanoutStart[net + 1] - fanoutStart[net];
+  }
+
+  /** Gate owning the i-th input pin that reads a net. */
+  public int getFanoutGate(int net, int i) {
+    return fanoutGate[fanoutStart[net] + i];
+  }
+
+  public int getLevel(int gate) {
+    return level[gate];
+  }
+
+  /** Gate indices in evaluation order (non-decreasing level, loops broken). */
+  public int[] getEvaluationOrder() {
+    return order.clone();
+  }
+
+  /**
+   * True if some combinational gate feeds (directly or not) back into
+   * itself without passing through a flip-flop, e.g. a NOR latch.
+   */
+  public boolean hasCombinationalLoop() {
+    for (int g = 0; g < gateCount; g++) {
+      if (isFlipFlop(type[g]))
+        continue;
+      for (int o = outputStart[g]; o < outputStart[g + 1]; o++) {
+        int n = outputNet[o];
+        if (n < 0)
+          continue;
+        for (int i = fanoutStart[n]; i < fanoutStart[n + 1]; i++) {
+          if (rank[fanoutGate[i]] <= rank[g])
+            return true; // Edge against the topological order
+        }
+      }
+    }
+    return false;
+  }
+
+  public static boolean isFlipFlop(byte t) {
+    return t == D_FF || t == JK_FF || t == T_FF;
+  }
+
+  public static boolean isCombinational(byte t) {
+    return t >= BUFFER && t <= NOR;
+  }
+
+  // --- Helpers ---
+
+  /**
+   * Copies a simulation state back onto the Wires and Component input pins,
+   * and into the state of every inlined chip, without triggering
+   * object-model events.
+   */
+  void syncToCircuit(NetlistState st) {
+    for (int n = 0; n < netCount; n++) {
+      if (wires[n] != null)
+        wires[n].syncSignal(st.getNet(n));
+    }
+
+    for (int g = 0; g < gateCount; g++) {
+      Component c = components[g];
+      if (c == null)
+        continue;
+      int base = inputStart[g];
+      for (int pin = 0; pin < inputStart[g + 1] - base; pin++)
+        c.syncInput(pin, st.getNet(inputNet[base + pin]));
+    }
+
+    for (ChipSpec chip : chips) {
+      CustomComponent cc = chip.chip();
+      NetlistState inner = cc.getState();
+      Netlist dn = inner.getNetlist();
+      for (int n = 0; n < dn.netCount; n++)
+        inner.setNet(n, st.getNet(chip.netBase() + n));
+      for (int g = 0; g < dn.gateCount; g++)
+        inner.setGateState(g, st.getState(chip.gateBase() + g), st.getLastClock(chip.gateBase() + g));
+      for (int pin = 0; pin < chip.inputs().length; pin++)
+        cc.syncInput(pin, st.getNet(chip.inputs()[pin]));
+    }
+  }
+
+  /** Per-gate delay in ticks under config (custom -> global -> none). */
+  public int[] resolveDelays(SimulationConfig config) {
+    int[] delay = new int[gateCount];
+    for (int g = 0; g < gateCount; g++) {
+      int d = 0;
+      if (config.propagationDelayEnabled()) {
+        d = (customDelay[g] != DEFAULT_DELAY) ? customDelay[g] : config.gateDelay();
+      }
+      delay[g] = Math.max(0, d);
+    }
+    return delay;
+  }
+
+  static int words(int bits) {
+    return (bits + 63) >>> 6;
+  }
+
+  static boolean getBit(long[] bits, int i) {
+    return ((bits[i >>> 6] >>> i) & 1L) != 0;
+  }
+
+  static void setBit(long[] bits, int i, boolean v) {
+    if (v)
+      bits[i >>> 6] |= 1L << i;
+    else
+      bits[i >>> 6] &= ~(1L << i);
+  }
+
+  private static byte typeOf(Component c) {
+    // Order matters: OutputProbe is a UnaryGate, NandGate is not an AndGate etc.
+    if (c instanceof Switch)
+      return SWITCH;
+    if (c instanceof Clock)
+      return CLOCK;
+    if (c instanceof OutputProbe || c instanceof BufferGate)
+      return BUFFER;
+    if (c instanceof NotGate)
+      return NOT;
+    if (c instanceof AndGate)
+      return AND;
+    if (c instanceof OrGate)
+      return OR;
+    if (c instanceof XorGate)
+      return XOR;
+    if (c instanceof NandGate)
+      return NAND;
+    if (c instanceof NorGate)
+      return NOR;
+    if (c instanceof DFlipFlop)
+      return D_FF;
+    if (c instanceof JKFlipFlop)
+      return JK_FF;
+    if (c instanceof TFlipFlop)
+      return T_FF;
+    if (c instanceof SevenSegmentDisplay || c instanceof HexDisplay || c instanceof TextLabel)
+      return PASSIVE;
+    throw new IllegalArgumentException("Cannot compile component type " + c.getClass().getSimpleName());
+  }
+
+  private static int outputPins(byte t) {
+    if (t == PASSIVE)
+      return 0;
+    if (isFlipFlop(t))
+      return 2;
+    return 1;
+  }
+
+  private static boolean sourceState(Component c) {
+    if (c instanceof Switch s)
+      return s.getState();
+    if (c instanceof Clock k)
+      return k.getState();
+    if (c instanceof DFlipFlop d)
+      return d.getState();
+    if (c instanceof JKFlipFlop jk)
+      return jk.getState();
+    if (c instanceof TFlipFlop t)
+      return t.getState();
+    return false;
+  }
+
+  private record GateSpec(Component component, byte type, int delay, int[] inputs, int[] outputs,
+      boolean state, boolean lastClock, boolean lagging) {
+  }
+
+  // Where an inlined chip instance's gates and nets start
+  private record ChipSpec(CustomComponent chip, int gateBase, int gateCount, int netBase, int[] inputs) {
+  }
+
+  // Walks the circuit, inlining every chip, and assigns indices
+  private static class Builder {
+    final List<GateSpec> gates = new ArrayList<>();
+    final List<Wire> wires = new ArrayList<>();
+    final BitSet netValues = new BitSet();
+    final Map<Component, Integer> gateIndex = new HashMap<>();
+    final Map<Wire, Integer> netIndex = new HashMap<>();
+    final List<ChipSpec> chips = new ArrayList<>();
+
+    void addCircuit(Circuit circuit) {
+      for (Wire w : circuit.getWires())
+        addNet(w);
+
+      // Input pin -> net, from the wires' destinations
+      Map<Component, int[]> pinNets = new HashMap<>();
+      for (Wire w : circuit.getWires()) {
+        int n = netIndex.get(w);
+        for (Wire.PortConnection pc : w.getDestinations()) {
+          int[] pins = pinNets.computeIfAbsent(pc.component, c -> unconnected(c.getInputCount()));
+          if (pc.inputIndex >= 0 && pc.inputIndex < pins.length)
+            pins[pc.inputIndex] = n;
+        }
+      }
+
+      for (Component c : circuit.getComponents()) {
+        int[] ins = pinNets.getOrDefault(c, unconnected(c.getInputCount()));
+        if (c instanceof CustomComponent cc) {
+          addChip(cc, ins, outputNets(c, cc.getOutputCount()));
+        } else {
+          byte t = typeOf(c);
+          boolean clk = isFlipFlop(t) && c.getInput(1);
+          addGate(c, new GateSpec(c, t, delayOf(c), ins, outputNets(c, outputPins(t)), sourceState(c), clk,
+              lagging(c, ins, 0, ins.length)));
+        }
+      }
+    }
+
+    // Copies the chip's (already flat) definition netlist, offset into ours
+    void addChip(CustomComponent cc, int[] ins, int[] outs) {
+      ChipDefinition def = cc.getDefinition();
+      Netlist dn = def.getNetlist();
+      NetlistState st = cc.getState();
+
+      int netBase = wires.size();
+      for (int n = 0; n < dn.netCount; n++) {
+        wires.add(null);
+        netValues.set(netBase + n, st.getNet(n));
+      }
+
+      // > 0: input pin + 1, < 0: -(output pin + 1)
+      int[] role = new int[dn.gateCount];
+      int[] inGates = def.getInputGates();
+      int[] outGates = def.getOutputGates();
+      for (int i = 0; i < inGates.length; i++)
+        role[inGates[i]] = i + 1;
+      for (int j = 0; j < outGates.length; j++)
+        role[outGates[j]] = -(j + 1);
+
+      int gateBase = gates.size();
+      for (int g = 0; g < dn.gateCount; g++) {
+        byte t = dn.type[g];
+        int delay = dn.customDelay[g];
+        int[] gIn = offset(dn.inputNet, dn.inputStart[g], dn.inputStart[g + 1], netBase);
+        int[] gOut = offset(dn.outputNet, dn.outputStart[g], dn.outputStart[g + 1], netBase);
+
+        if (role[g] > 0) {
+          // Input Switch: buffers the outer net with the chip's own delay
+          int pin = role[g] - 1;
+          t = BUFFER;
+          delay = delayOf(cc);
+          gIn = new int[] { (pin < ins.length) ? ins[pin] : UNCONNECTED };
+        } else if (role[g] < 0) {
+          // OutputProbe: drives the chip's outer wire
+          int pin = -role[g] - 1;
+          gOut = new int[] { (pin < outs.length) ? outs[pin] : UNCONNECTED };
+        }
+        boolean lagging = role[g] > 0 && lagging(cc, ins, role[g] - 1, role[g]);
+        gates.add(new GateSpec(null, t, delay, gIn, gOut, st.getState(g), st.getLastClock(g), lagging));
+      }
+      chips.add(new ChipSpec(cc, gateBase, dn.gateCount, netBase, ins));
+    }
+
+    void addGate(Component c, GateSpec spec) {
+      if (gateIndex.putIfAbsent(c, gates.size()) == null)
+        gates.add(spec);
+    }
+
+    void addNet(Wire w) {
+      if (netIndex.putIfAbsent(w, wires.size()) == null) {
+        netValues.set(wires.size(), w.getSignal());
+        wires.add(w);
+      }
+    }
+
+    // True if an input pin in [from, to) still differs from its net, i.e.
+    // the object engine has a delivery to it in flight
+    private boolean lagging(Component c, int[] ins, int from, int to) {
+      for (int pin = from; pin < Math.min(to, ins.length); pin++) {
+        if (ins[pin] >= 0 && c.getInput(pin) != netValues.get(ins[pin]))
+          return true;
+      }
+      return false;
+    }
+
+    private int[] outputNets(Component c, int pins) {
+      int[] out = unconnected(pins);
+      for (int pin = 0; pin < pins; pin++) {
+        Integer n = netIndex.get(c.getOutputWire(pin));
+        if (n != null)
+          out[pin] = n;
+      }
+      return out;
+    }
+
+    private static int[] offset(int[] nets, int from, int to, int base) {
+      int[] out = new int[to - from];
+      for (int i = 0; i < out.length; i++)
+        out[i] = (nets[from + i] >= 0) ? nets[from + i] + base : UNCONNECTED;
+      return out;
+    }
+
+    private static int[] unconnected(int pins) {
+      int[] out = new int[pins];
+      Arrays.fill(out, UNCONNECTED);
+      return out;
+    }
+
+    private static int delayOf(Component c) {
+      return (c.getCustomDelay() != null) ? c.getCustomDelay() : DEFAULT_DELAY;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package uk.ac.cam.jml229.logic.core.netlist;
+
+import java.util.Arrays;
+
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
+import uk.ac.cam.jml229.logic.core.Simulator.RunResult;
+import uk.ac.cam.jml229.logic.core.Wire;
+
+/**
+ * Event-driven evaluator over a compiled Netlist.
+ * Signals live in a packed NetlistState and pending gate evaluations in an
+ * int-only timing wheel, so the inner loop touches nothing but arrays.
+ *
+ * Timing matches the object model: when a net changes at tick t, every
+ * gate it feeds is evaluated at t + that gate's delay (or within tick t
+ * when propagation delay is off). Every gate due at a tick is evaluated
+ * before any of them drives its outputs, so each sees the nets as they
+ * were at the start of the tick, as the object model's deferred wire
+ * deliveries do. A gate queued twice for the same tick is only evaluated
+ * once, since both evaluations would see the same inputs.
+ *
+ * Results stay in the arrays until syncToCircuit() copies them back to the
+ * Wires and Components for the UI or a SignalMonitor.
+ * Not thread-safe.
+ */
+public class NetlistSimulator {
+
+  private final Netlist nl;
+
+  // --- Signal State ---
+  private final NetlistState st;
+
+  // --- Timing ---
+  private final int[] delay;
+  private final GateWheel wheel;
+
+  private long currentTick = 0;
+  private long evaluations = 0;
+
+  // Gates due this tick and their computed outputs, before they're driven
+  private int[] batch = new int[64];
+  private int[] batchOutputs = new int[64];
+
+  public NetlistSimulator(Netlist netlist, SimulationConfig config) {
+    this.nl = netlist;
+    this.st = new NetlistState(netlist);
+
+    this.delay = netlist.resolveDelays(config);
+    long[] queuedFor = new long[nl.gateCount];
+    Arrays.fill(queuedFor, -1L);
+    this.wheel = new GateWheel(Arrays.stream(delay).max().orElse(0), queuedFor);
+
+    // Finish the deliveries the object engine still had in flight
+    for (int g = 0; g < nl.gateCount; g++) {
+      if (Netlist.getBit(nl.initialLagging, g))
+        wheel.queue(g, delay[g]);
+    }
+  }
+
+  public Netlist getNetlist() {
+    return nl;
+  }
+
+  // --- Stimulus ---
+
+  /** Sets a Switch gate and drives its output immediately. */
+  public void setSwitch(int gate, boolean on) {
+    if (st.getState(gate) == on)
+      return;
+    queueFanout(gate, st.setSource(gate, on));
+  }
+
+  public void setSwitch(Component sw, boolean on) {
+    setSwitch(requireGate(sw), on);
+  }
+
+  /** Toggles every Clock, like Circuit.tick(). */
+  public void tickClocks() {
+    for (int g = 0; g < nl.gateCount; g++) {
+      if (nl.type[g] == Netlist.CLOCK) {
+        queueFanout(g, st.setSource(g, !st.getState(g)));
+      }
+    }
+  }
+
+  /** Queues every gate for evaluation, e.g. to settle a freshly compiled netlist. */
+  public void evaluateAll() {
+    for (int g = 0; g < nl.gateCount; g++)
+      wheel.queue(g, currentTick);
+  }
+
+  // --- Running ---
+
+  /** Advances up to limit ticks, skipping idle ticks; stops early once stable. */
+  public RunResult runUntilStable(long limit) {
+    long startTick = currentTick;
+    long startEvals = evaluations;
+    long end = currentTick + limit;
+
+    while (currentTick < end) {
+      long next = wheel.nextTick(currentTick);
+      if (next < 0)
+        break;
+      if (next >= end) {
+        currentTick = end;
+        break;
+      }
+      currentTick = next;
+      processTick();
+      currentTick++;
+    }
+    return new RunResult(currentTick - startTick, evaluations - startEvals, isStable());
+  }
+
+  /**
+   * Processes every evaluation due before the given tick and leaves the
+   * clock there, letting idle time pass if the netlist goes quiet first.
+   */
+  public void advanceTo(long tick) {
+    if (tick <= currentTick)
+      return;
+    runUntilStable(tick - currentTick);
+    currentTick = tick;
+  }
+
+  public boolean isStable() {
+    return wheel.isEmpty();
+  }
+
+  public long getTick() {
+    return currentTick;
+  }
+
+  public long getEvaluations() {
+    return evaluations;
+  }
+
+  // --- Results ---
+
+  public boolean getNet(int net) {
+    return st.getNet(net);
+  }
+
+  public boolean getSignal(Wire w) {
+    return getNet(nl.indexOf(w));
+  }
+
+  /** Stored bit of a Switch, Clock or flip-flop gate. */
+  public boolean getState(int gate) {
+    return st.getState(gate);
+  }
+
+  /** Value seen on an input pin (e.g. pin 0 of an OutputProbe). */
+  public boolean getInput(int gate, int pin) {
+    return getNet(nl.getInputNet(gate, pin));
+  }
+
+  public boolean getInput(Component c, int pin) {
+    return getInput(requireGate(c), pin);
+  }
+
+  /**
+   * Copies net values back onto the Wires and Component input pins
+   * (including those inside chips), without triggering any object-model
+   * events.
+   */
+  public void syncToCircuit() {
+    nl.syncToCircuit(st);
+  }
+
+  // --- Evaluation ---
+
+  private void processTick() {
+    // Zero-delay fan-out lands back in this tick, so repeat until it settles
+    while (wheel.hasEventsAt(currentTick)) {
+      int n = 0;
+      int g;
+      while ((g = wheel.pop(currentTick)) >= 0) {
+        if (n == batch.length) {
+          batch = Arrays.copyOf(batch, n * 2);
+          batchOutputs = Arrays.copyOf(batchOutputs, n * 2);
+        }
+        batch[n] = g;
+        batchOutputs[n++] = st.compute(g);
+      }
+      evaluations += n;
+      for (int i = 0; i < n; i++)
+        queueFanout(batch[i], st.commit(batch[i], batchOutputs[i]));
+    }
+  }
+
+  private void queueFanout(int g, int changedPins) {
+    for (int pin = 0; changedPins != 0; pin++, changedPins >>>= 1) {
+      if ((changedPins & 1) == 0)
+        continue;
+      int net = nl.outputNet[nl.outputStart[g] + pin];
+      for (int i = nl.fanoutStart[net]; i < nl.fanoutStart[net + 1]; i++) {
+        int target = nl.fanoutGate[i];
+        wheel.queue(target, currentTick + delay[target]);
+      }
+    }
+  }
+
+  private int requireGate(Component c) {
+    int g = nl.indexOf(c);
+    if (g < 0)
+      throw new IllegalArgumentException("Component '" + c.getName() + "' is not in this netlist");
+    return g;
+  }
+}
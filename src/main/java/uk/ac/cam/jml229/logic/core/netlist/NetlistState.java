@@ -0,0 +1,226 @@
+package uk.ac.cam.jml229.logic.core.netlist;
+
+/**
+ * Signal state for one copy of a Netlist: a bit per net, plus the stored
+ * bit and last clock level of each Switch, Clock and flip-flop gate.
+ * This is all a CustomComponent instance owns, so placing many copies of
+ * a chip costs a few bits per gate rather than a copy of its objects.
+ *
+ * Gates are evaluated with zero delay. evaluate() handles a single gate
+ * and reports which outputs changed, for event-driven callers;
+ * propagate() and settle() run gates in the netlist's topological order.
+ * Not thread-safe.
+ */
+public final class NetlistState {
+
+  private final Netlist nl;
+  private final long[] nets;
+  private final long[] state;
+  private final long[] lastClock;
+  private final long[] dirty; // By rank, for propagate()
+
+  public NetlistState(Netlist netlist) {
+    this.nl = netlist;
+    this.nets = netlist.initialNets.clone();
+    this.state = netlist.initialState.clone();
+    this.lastClock = netlist.initialClock.clone();
+    this.dirty = new long[Netlist.words(netlist.gateCount)];
+  }
+
+  private NetlistState(NetlistState other) {
+    this.nl = other.nl;
+    this.nets = other.nets.clone();
+    this.state = other.state.clone();
+    this.lastClock = other.lastClock.clone();
+    this.dirty = other.dirty.clone();
+  }
+
+  public NetlistState copy() {
+    return new NetlistState(this);
+  }
+
+  public Netlist getNetlist() {
+    return nl;
+  }
+
+  // --- Reading ---
+
+  public boolean getNet(int net) {
+    return net >= 0 && Netlist.getBit(nets, net);
+  }
+
+  /** Stored bit of a Switch, Clock or flip-flop gate. */
+  public boolean getState(int gate) {
+    return Netlist.getBit(state, gate);
+  }
+
+  public boolean getLastClock(int gate) {
+    return Netlist.getBit(lastClock, gate);
+  }
+
+  /** Value seen on an input pin (e.g. pin 0 of an OutputProbe). */
+  public boolean getInput(int gate, int pin) {
+    return getNet(nl.getInputNet(gate, pin));
+  }
+
+  // --- Writing ---
+
+  void setNet(int net, boolean v) {
+    Netlist.setBit(nets, net, v);
+  }
+
+  void setGateState(int gate, boolean q, boolean clk) {
+    Netlist.setBit(state, gate, q);
+    Netlist.setBit(lastClock, gate, clk);
+  }
+
+  /**
+   * Sets the stored bit of a Switch or Clock gate and drives its output.
+   *
+   * @return 1 if the output net changed, else 0
+   */
+  public int setSource(int gate, boolean on) {
+    Netlist.setBit(state, gate, on);
+    return drive(gate, 0, on) ? 1 : 0;
+  }
+
+  // --- Evaluation ---
+
+  /**
+   * Evaluates one gate against the current nets.
+   *
+   * @return a mask with bit p set if output pin p's net changed
+   */
+  public int evaluate(int g) {
+    return commit(g, compute(g));
+  }
+
+  /**
+   * Evaluates one gate against the current nets without driving them, so
+   * an engine can evaluate a whole tick before any gate sees its changes.
+   * A flip-flop's stored bit is updated, as only the gate itself reads it.
+   *
+   * @return the new output values, bit p for output pin p
+   */
+  public int compute(int g) {
+    byte type = nl.type[g];
+    if (GateLogic.isCombinational(type)) {
+      long acc = GateLogic.start(type);
+      for (int i = nl.inputStart[g]; i < nl.inputStart[g + 1]; i++)
+        acc = GateLogic.fold(type, acc, lanes(i));
+      return GateLogic.finish(type, acc) != 0 ? 1 : 0;
+    } else if (Netlist.isFlipFlop(type)) {
+      return computeFlipFlop(g, type, nl.inputStart[g]);
+    } else if (type == Netlist.SWITCH || type == Netlist.CLOCK) {
+      return Netlist.getBit(state, g) ? 1 : 0;
+    }
+    return 0; // Passive, no outputs
+  }
+
+  /**
+   * Drives gate g's output nets to values from compute().
+   *
+   * @return a mask with bit p set if output pin p's net changed
+   */
+  public int commit(int g, int outputs) {
+    int changed = 0;
+    for (int pin = 0; pin < nl.outputStart[g + 1] - nl.outputStart[g]; pin++) {
+      if (drive(g, pin, ((outputs >>> pin) & 1) != 0))
+        changed |= 1 << pin;
+    }
+    return changed;
+  }
+
+  private int computeFlipFlop(int g, byte type, int in) {
+    long clk = lanes(in + 1);
+    long k = (type == Netlist.JK_FF) ? lanes(in + 2) : 0L;
+    long q = GateLogic.clock(type, bit(state, g), bit(lastClock, g), clk, lanes(in), k);
+    Netlist.setBit(state, g, q != 0);
+    Netlist.setBit(lastClock, g, clk != 0);
+    return q != 0 ? 1 : 2; // Q, then not-Q
+  }
+
+  /** Marks every gate reading an output of gate g for the next propagate(). */
+  public void markFanout(int g) {
+    for (int o = nl.outputStart[g]; o < nl.outputStart[g + 1]; o++) {
+      int net = nl.outputNet[o];
+      if (net < 0)
+        continue;
+      for (int i = nl.fanoutStart[net]; i < nl.fanoutStart[net + 1]; i++) {
+        int r = nl.rank[nl.fanoutGate[i]];
+        dirty[r >>> 6] |= 1L << r;
+      }
+    }
+  }
+
+  /**
+   * Evaluates the gates marked by markFanout(), and whatever their changes
+   * reach, in topological order. A change that feeds back to an earlier
+   * gate (a flip-flop or a loop) starts another pass.
+   *
+   * @return true if it settled within maxPasses
+   */
+  public boolean propagate(int maxPasses) {
+    int[] order = nl.order;
+    for (int pass = 0; pass < maxPasses; pass++) {
+      if (!hasDirty())
+        return true;
+      for (int w = 0; w < dirty.length; w++) {
+        while (dirty[w] != 0) {
+          int r = (w << 6) + Long.numberOfTrailingZeros(dirty[w]);
+          dirty[w] &= dirty[w] - 1;
+          int g = order[r];
+          if (evaluate(g) != 0)
+            markFanout(g);
+        }
+      }
+    }
+    return !hasDirty();
+  }
+
+  private boolean hasDirty() {
+    for (long w : dirty) {
+      if (w != 0)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Sweeps every gate in topological order until nothing changes.
+   *
+   * @return the number of sweeps taken, or -1 if it did not settle
+   */
+  public int settle(int maxSweeps) {
+    int[] order = nl.order;
+    for (int sweep = 1; sweep <= maxSweeps; sweep++) {
+      boolean changed = false;
+      for (int g : order)
+        changed |= evaluate(g) != 0;
+      if (!changed)
+        return sweep;
+    }
+    return -1;
+  }
+
+  // Input and stored bits as GateLogic lane words: -1L for true, 0L for false
+  private long lanes(int inputSlot) {
+    int net = nl.inputNet[inputSlot];
+    return (net >= 0) ? -((nets[net >>> 6] >>> net) & 1L) : 0L;
+  }
+
+  private static long bit(long[] bits, int i) {
+    return -((bits[i >>> 6] >>> i) & 1L);
+  }
+
+  private boolean drive(int g, int pin, boolean v) {
+    int idx = nl.outputStart[g] + pin;
+    if (idx >= nl.outputStart[g + 1])
+      return false;
+    int net = nl.outputNet[idx];
+    if (net < 0 || Netlist.getBit(nets, net) == v)
+      return false;
+    nets[net >>> 6] ^= 1L << net;
+    return true;
+  }
+}
@@ -0,0 +1,592 @@
+package uk.ac.cam.jml229.logic.core.netlist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
+import uk.ac.cam.jml229.logic.core.Simulator.RunResult;
+import uk.ac.cam.jml229.logic.core.Wire;
+
+/**
+ * Multi-threaded event-driven evaluator for large netlists.
+ * Gates are split into connected regions, one per worker thread, and each
+ * worker keeps its own event wheel. Workers step through simulated time in
+ * lockstep, in three phases separated by barriers:
+ *
+ * 1. Evaluate every gate due now, reading nets but writing nothing shared.
+ * 2. Commit the output changes (each net has one driver, so one writer)
+ *    and queue fan-out gates, posting gates owned by other regions to
+ *    that region's inbox.
+ * 3. Drain the inbox into the local wheel.
+ *
+ * Because a change can only affect a gate at least its delay later, every
+ * gate due at the same tick sees the nets as they were at the start of
+ * that tick; the result does not depend on thread timing. With propagation
+ * delay off, the three phases repeat within the tick until it settles.
+ *
+ * Only worth it for circuits with many thousands of gates, as each tick
+ * costs three barrier crossings. Not thread-safe: drive it from one thread
+ * and close() it when finished.
+ */
+public class PartitionedSimulator implements AutoCloseable {
+
+  /** Smallest region worth giving its own thread. */
+  public static final int MIN_GATES_PER_PARTITION = 4096;
+
+  private final Netlist nl;
+
+  // --- Signal State (byte-sized so regions never share a word) ---
+  private final boolean[] nets;
+  private final boolean[] state;
+  private final boolean[] lastClock;
+
+  // --- Timing ---
+  private final int[] delay;
+
+  // --- Partitioning ---
+  private final int[] owner;
+  private final Worker[] workers;
+  private ExecutorService pool;
+
+  // --- Current Run (only changed by the barrier action) ---
+  private long currentTick = 0;
+  private long endTick;
+  private boolean done;
+  private int phase;
+
+  public PartitionedSimulator(Netlist netlist, SimulationConfig config) {
+    this(netlist, config, defaultPartitions(netlist));
+  }
+
+  public PartitionedSimulator(Netlist netlist, SimulationConfig config, int partitions) {
+    if (partitions < 1)
+      throw new IllegalArgumentException("Partition count must be at least 1");
+    this.nl = netlist;
+    this.nets = new boolean[nl.netCount];
+    this.state = new boolean[nl.gateCount];
+    this.lastClock = new boolean[nl.gateCount];
+    for (int n = 0; n < nl.netCount; n++)
+      nets[n] = Netlist.getBit(nl.initialNets, n);
+    for (int g = 0; g < nl.gateCount; g++) {
+      state[g] = Netlist.getBit(nl.initialState, g);
+      lastClock[g] = Netlist.getBit(nl.initialClock, g);
+    }
+
+    this.delay = netlist.resolveDelays(config);
+    int maxDelay = Arrays.stream(delay).max().orElse(0);
+    long[] queuedFor = new long[nl.gateCount];
+    Arrays.fill(queuedFor, -1L);
+
+    int parts = Math.max(1, Math.min(partitions, nl.gateCount));
+    this.owner = partition(nl, parts);
+    this.workers = new Worker[parts];
+    for (int p = 0; p < parts; p++)
+      workers[p] = new Worker(p, parts, new GateWheel(maxDelay, queuedFor));
+
+    // Finish the deliveries the object engine still had in flight
+    for (int g = 0; g < nl.gateCount; g++) {
+      if (Netlist.getBit(nl.initialLagging, g))
+        workers[owner[g]].wheel.queue(g, delay[g]);
+    }
+  }
+
+  /** One partition per core, but none smaller than MIN_GATES_PER_PARTITION. */
+  public static int defaultPartitions(Netlist netlist) {
+    int bySize = Math.max(1, netlist.gateCount / MIN_GATES_PER_PARTITION);
+    return Math.min(Runtime.getRuntime().availableProcessors(), bySize);
+  }
+
+  public Netlist getNetlist() {
+    return nl;
+  }
+
+  public int getPartitionCount() {
+    return workers.length;
+  }
+
+  public int getPartition(int gate) {
+    return owner[gate];
+  }
+
+  /** Nets whose driver and at least one reader are in different partitions. */
+  public int getCutSize() {
+    int cut = 0;
+    for (int g = 0; g < nl.gateCount; g++) {
+      for (int i = nl.outputStart[g]; i < nl.outputStart[g + 1]; i++) {
+        int net = nl.outputNet[i];
+        if (net < 0)
+          continue;
+        for (int f = nl.fanoutStart[net]; f < nl.fanoutStart[net + 1]; f++) {
+          if (owner[nl.fanoutGate[f]] != owner[g]) {
+            cut++;
+            break;
+          }
+        }
+      }
+    }
+    return cut;
+  }
+
+  // --- Stimulus ---
+
+  /** Sets a Switch gate and drives its output immediately. */
+  public void setSwitch(int gate, boolean on) {
+    if (state[gate] == on)
+      return;
+    state[gate] = on;
+    driveNow(gate, 0, on);
+  }
+
+  public void setSwitch(Component sw, boolean on) {
+    setSwitch(requireGate(sw), on);
+  }
+
+  /** Toggles every Clock, like Circuit.tick(). */
+  public void tickClocks() {
+    for (int g = 0; g < nl.gateCount; g++) {
+      if (nl.type[g] == Netlist.CLOCK) {
+        state[g] = !state[g];
+        driveNow(g, 0, state[g]);
+      }
+    }
+  }
+
+  /** Queues every gate for evaluation, e.g. to settle a freshly compiled netlist. */
+  public void evaluateAll() {
+    for (int g = 0; g < nl.gateCount; g++)
+      workers[owner[g]].wheel.queue(g, currentTick);
+  }
+
+  // Stimulus happens between runs, so it can write straight into the wheels
+  private void driveNow(int g, int pin, boolean v) {
+    int idx = nl.outputStart[g] + pin;
+    if (idx >= nl.outputStart[g + 1])
+      return;
+    int net = nl.outputNet[idx];
+    if (net < 0 || nets[net] == v)
+      return;
+    nets[net] = v;
+    for (int i = nl.fanoutStart[net]; i < nl.fanoutStart[net + 1]; i++) {
+      int target = nl.fanoutGate[i];
+      workers[owner[target]].wheel.queue(target, currentTick + delay[target]);
+    }
+  }
+
+  // --- Running ---
+
+  /** Advances up to limit ticks, skipping idle ticks; stops early once stable. */
+  public RunResult runUntilStable(long limit) {
+    long startTick = currentTick;
+    long startEvals = getEvaluations();
+    endTick = currentTick + limit;
+    done = false;
+    advance(currentTick);
+    if (done)
+      return new RunResult(currentTick - startTick, 0, isStable());
+
+    phase = 0;
+    CyclicBarrier barrier = new CyclicBarrier(workers.length, this::endPhase);
+    List<Future<?>> helpers = new ArrayList<>();
+    if (workers.length > 1) {
+      if (pool == null)
+        pool = Executors.newFixedThreadPool(workers.length - 1, r -> {
+          Thread t = new Thread(r, "logik-partition");
+          t.setDaemon(true);
+          return t;
+        });
+      for (int p = 1; p < workers.length; p++) {
+        Worker w = workers[p];
+        helpers.add(pool.submit(() -> w.run(barrier)));
+      }
+    }
+
+    // The calling thread doubles as worker 0
+    RuntimeException failure = null;
+    try {
+      workers[0].run(barrier);
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+    for (Future<?> f : helpers) {
+      try {
+        f.get();
+      } catch (ExecutionException e) {
+        if (failure == null)
+          failure = new IllegalStateException("Partition worker failed", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        if (failure == null)
+          failure = new IllegalStateException("Interrupted while waiting for partition workers", e);
+      }
+    }
+    if (failure != null)
+      throw failure;
+
+    return new RunResult(currentTick - startTick, getEvaluations() - startEvals, isStable());
+  }
+
+  // Barrier action: only the last of the three phases moves time on.
+  // Stay on this tick while a zero-delay change left work due, otherwise
+  // the tick is finished and the search starts from the one after.
+  private void endPhase() {
+    if (++phase % 3 != 0)
+      return;
+    for (Worker w : workers) {
+      if (w.wheel.hasEventsAt(currentTick))
+        return;
+    }
+    advance(currentTick + 1);
+  }
+
+  private void advance(long from) {
+    long next = -1;
+    for (Worker w : workers) {
+      long t = w.wheel.nextTick(from);
+      if (t >= 0 && (next < 0 || t < next))
+        next = t;
+    }
+
+    if (next < 0) {
+      currentTick = from;
+      done = true;
+    } else if (next >= endTick) {
+      currentTick = endTick;
+      done = true;
+    } else {
+      currentTick = next;
+    }
+  }
+
+  /**
+   * Processes every evaluation due before the given tick and leaves the
+   * clock there, letting idle time pass if the netlist goes quiet first.
+   */
+  public void advanceTo(long tick) {
+    if (tick <= currentTick)
+      return;
+    runUntilStable(tick - currentTick);
+    currentTick = tick;
+  }
+
+  public boolean isStable() {
+    for (Worker w : workers) {
+      if (!w.wheel.isEmpty())
+        return false;
+    }
+    return true;
+  }
+
+  public long getTick() {
+    return currentTick;
+  }
+
+  public long getEvaluations() {
+    long total = 0;
+    for (Worker w : workers)
+      total += w.evaluations;
+    return total;
+  }
+
+  @Override
+  public void close() {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+  // --- Results ---
+
+  public boolean getNet(int net) {
+    return net >= 0 && nets[net];
+  }
+
+  public boolean getSignal(Wire w) {
+    return getNet(nl.indexOf(w));
+  }
+
+  /** Stored bit of a Switch, Clock or flip-flop gate. */
+  public boolean getState(int gate) {
+    return state[gate];
+  }
+
+  /** Value seen on an input pin (e.g. pin 0 of an OutputProbe). */
+  public boolean getInput(int gate, int pin) {
+    return getNet(nl.getInputNet(gate, pin));
+  }
+
+  public boolean getInput(Component c, int pin) {
+    return getInput(requireGate(c), pin);
+  }
+
+  /**
+   * Copies net values back onto the Wires and Component input pins
+   * (including those inside chips), without triggering any object-model
+   * events.
+   */
+  public void syncToCircuit() {
+    NetlistState snapshot = new NetlistState(nl);
+    for (int n = 0; n < nl.netCount; n++)
+      snapshot.setNet(n, nets[n]);
+    for (int g = 0; g < nl.gateCount; g++)
+      snapshot.setGateState(g, state[g], lastClock[g]);
+    nl.syncToCircuit(snapshot);
+  }
+
+  // --- Partitioning ---
+
+  /**
+   * Greedy graph growing: each region is grown breadth-first from an
+   * unassigned gate (taken in evaluation order) across both fan-in and
+   * fan-out, until it holds its share of gates. Connected cones stay
+   * together, which keeps the number of cut nets low without a full
+   * min-cut solver.
+   *
+   * An inlined chip joins a region whole, since its internal nets are the
+   * densest wiring there is; only a chip bigger than a region's share is
+   * split like loose gates. A region can overshoot its share by less than
+   * one chip, and the later shares shrink to match.
+   */
+  static int[] partition(Netlist nl, int parts) {
+    int n = nl.gateCount;
+    int[] owner = new int[n];
+    Arrays.fill(owner, -1);
+    if (parts == 1) {
+      Arrays.fill(owner, 0);
+      return owner;
+    }
+
+    int[] driver = new int[nl.netCount];
+    Arrays.fill(driver, -1);
+    for (int g = 0; g < n; g++) {
+      for (int i = nl.outputStart[g]; i < nl.outputStart[g + 1]; i++) {
+        if (nl.outputNet[i] >= 0)
+          driver[nl.outputNet[i]] = g;
+      }
+    }
+
+    // The gates [unitStart, unitEnd) that are assigned along with each gate
+    int[] unitStart = new int[n];
+    int[] unitEnd = new int[n];
+    for (int g = 0; g < n; g++) {
+      unitStart[g] = g;
+      unitEnd[g] = g + 1;
+    }
+    for (int c = 0; c < nl.getChipCount(); c++) {
+      int from = nl.getChipGateStart(c);
+      int to = nl.getChipGateEnd(c);
+      if (to - from > n / parts)
+        continue;
+      for (int g = from; g < to; g++) {
+        unitStart[g] = from;
+        unitEnd[g] = to;
+      }
+    }
+
+    IntBuffer queue = new IntBuffer();
+    int seedPos = 0;
+    int assigned = 0;
+    for (int p = 0; p < parts; p++) {
+      // Spread any remainder over the first regions
+      int quota = (n - assigned) / (parts - p);
+      int size = 0;
+      int head = 0;
+      queue.size = 0;
+
+      while (size < quota) {
+        if (head == queue.size) {
+          while (owner[nl.order[seedPos]] >= 0)
+            seedPos++;
+          size += claim(nl.order[seedPos], p, owner, unitStart, unitEnd, queue);
+          continue;
+        }
+        int g = queue.data[head++];
+
+        // Fan-in: the drivers of this gate's input nets
+        for (int i = nl.inputStart[g]; i < nl.inputStart[g + 1] && size < quota; i++) {
+          int net = nl.inputNet[i];
+          int d = (net >= 0) ? driver[net] : -1;
+          if (d >= 0 && owner[d] < 0)
+            size += claim(d, p, owner, unitStart, unitEnd, queue);
+        }
+        // Fan-out: every gate reading this gate's outputs
+        for (int i = nl.outputStart[g]; i < nl.outputStart[g + 1] && size < quota; i++) {
+          int net = nl.outputNet[i];
+          if (net < 0)
+            continue;
+          for (int f = nl.fanoutStart[net]; f < nl.fanoutStart[net + 1] && size < quota; f++) {
+            int t = nl.fanoutGate[f];
+            if (owner[t] < 0)
+              size += claim(t, p, owner, unitStart, unitEnd, queue);
+          }
+        }
+      }
+      assigned += size;
+    }
+    return owner;
+  }
+
+  // Gives region p gate g and the rest of its unit, returning how many were new
+  private static int claim(int g, int p, int[] owner, int[] unitStart, int[] unitEnd, IntBuffer queue) {
+    int claimed = 0;
+    for (int u = unitStart[g]; u < unitEnd[g]; u++) {
+      if (owner[u] < 0) {
+        owner[u] = p;
+        queue.add(u);
+        claimed++;
+      }
+    }
+    return claimed;
+  }
+
+  private int requireGate(Component c) {
+    int g = nl.indexOf(c);
+    if (g < 0)
+      throw new IllegalArgumentException("Component '" + c.getName() + "' is not in this netlist");
+    return g;
+  }
+
+  // Growable int list without boxing
+  private static final class IntBuffer {
+    int[] data = new int[64];
+    int size = 0;
+
+    void add(int v) {
+      if (size == data.length)
+        data = Arrays.copyOf(data, size * 2);
+      data[size++] = v;
+    }
+  }
+
+  /** One region: its own wheel, pending changes and outgoing mail. */
+  private final class Worker {
+    final int id;
+    final GateWheel wheel;
+    final IntBuffer changedNets = new IntBuffer();
+    final IntBuffer changedValues = new IntBuffer();
+    final IntBuffer[] outbox; // Gates for each other region, filled in phase 2
+    long evaluations = 0;
+
+    Worker(int id, int parts, GateWheel wheel) {
+      this.id = id;
+      this.wheel = wheel;
+      this.outbox = new IntBuffer[parts];
+      for (int p = 0; p < parts; p++)
+        outbox[p] = new IntBuffer();
+    }
+
+    void run(CyclicBarrier barrier) {
+      try {
+        while (!done) {
+          long tick = currentTick;
+
+          // 1. Evaluate
+          int g;
+          while ((g = wheel.pop(tick)) >= 0)
+            evaluate(g);
+          barrier.await();
+
+          // 2. Commit
+          for (int i = 0; i < changedNets.size; i++) {
+            int net = changedNets.data[i];
+            boolean v = changedValues.data[i] != 0;
+            if (nets[net] == v)
+              continue;
+            nets[net] = v;
+            for (int f = nl.fanoutStart[net]; f < nl.fanoutStart[net + 1]; f++) {
+              int target = nl.fanoutGate[f];
+              int p = owner[target];
+              if (p == id)
+                wheel.queue(target, tick + delay[target]);
+              else
+                outbox[p].add(target);
+            }
+          }
+          changedNets.size = 0;
+          changedValues.size = 0;
+          barrier.await();
+
+          // 3. Deliver mail addressed to this region
+          for (Worker w : workers) {
+            if (w == this)
+              continue;
+            IntBuffer in = w.outbox[id];
+            for (int i = 0; i < in.size; i++) {
+              int target = in.data[i];
+              wheel.queue(target, tick + delay[target]);
+            }
+            in.size = 0;
+          }
+          barrier.await(); // endPhase() picks the next tick here
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        barrier.reset();
+        throw new IllegalStateException("Partition worker interrupted", e);
+      } catch (BrokenBarrierException e) {
+        throw new IllegalStateException("Another partition worker failed", e);
+      } catch (RuntimeException e) {
+        barrier.reset(); // Release the others instead of deadlocking
+        throw e;
+      }
+    }
+
+    // --- Evaluation (reads shared nets, writes only this region's state) ---
+
+    private void evaluate(int g) {
+      evaluations++;
+      byte type = nl.type[g];
+      boolean out;
+      if (GateLogic.isCombinational(type)) {
+        long acc = GateLogic.start(type);
+        for (int i = nl.inputStart[g]; i < nl.inputStart[g + 1]; i++)
+          acc = GateLogic.fold(type, acc, read(i));
+        out = GateLogic.finish(type, acc) != 0;
+      } else if (Netlist.isFlipFlop(type)) {
+        evaluateFlipFlop(g, type, nl.inputStart[g]);
+        return;
+      } else if (type == Netlist.SWITCH || type == Netlist.CLOCK) {
+        out = state[g];
+      } else {
+        return; // Passive
+      }
+      emit(g, 0, out);
+    }
+
+    private void evaluateFlipFlop(int g, byte type, int in) {
+      long clk = read(in + 1);
+      long k = (type == Netlist.JK_FF) ? read(in + 2) : 0L;
+      boolean q = GateLogic.clock(type, state[g] ? -1L : 0L, lastClock[g] ? -1L : 0L, clk, read(in), k) != 0;
+      state[g] = q;
+      lastClock[g] = clk != 0;
+
+      emit(g, 0, q);
+      emit(g, 1, !q);
+    }
+
+    // Inputs as GateLogic lane words: -1L for true, 0L for false
+    private long read(int inputSlot) {
+      int net = nl.inputNet[inputSlot];
+      return (net >= 0 && nets[net]) ? -1L : 0L;
+    }
+
+    private void emit(int g, int pin, boolean v) {
+      int idx = nl.outputStart[g] + pin;
+      if (idx >= nl.outputStart[g + 1])
+        return;
+      int net = nl.outputNet[idx];
+      if (net < 0 || nets[net] == v)
+        return;
+      changedNets.add(net);
+      changedValues.add(v ? 1 : 0);
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package uk.ac.cam.jml229.logic.core.netlist;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.ac.cam.jml229.logic.components.ChipDefinition;
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.CustomComponent;
+import uk.ac.cam.jml229.logic.components.io.OutputProbe;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.core.Circuit;
+
+/**
+ * Every input combination of a circuit or IC and the outputs it gives.
+ * Row r sets input i to bit i of r. Outputs are stored bit-packed per
+ * column, 64 rows to a long, so a 16-input block with 8 outputs takes
+ * 64 KB.
+ *
+ * Rows are worked out 64 at a time with the BitParallelSimulator, and
+ * blocks of rows are split across a ForkJoinPool. Each task owns its
+ * simulator state; the compiled netlist is shared read only. Every
+ * block starts from the circuit's current state, so a sequential circuit
+ * gives the outputs seen right after each input combination is applied.
+ */
+public final class TruthTable {
+
+  /** Widest input space accepted (a billion rows). */
+  public static final int MAX_INPUTS = 30;
+
+  // Blocks of 64 rows a task handles before splitting stops
+  private static final int BLOCKS_PER_TASK = 16;
+  private static final int MAX_SWEEPS = 64;
+
+  private final List<String> inputNames;
+  private final List<String> outputNames;
+  private final long[][] columns; // [output][block], bit k = row block*64+k
+  private final int unsettledBlocks;
+
+  private TruthTable(List<String> inputNames, List<String> outputNames, long[][] columns, int unsettledBlocks) {
+    this.inputNames = List.copyOf(inputNames);
+    this.outputNames = List.copyOf(outputNames);
+    this.columns = columns;
+    this.unsettledBlocks = unsettledBlocks;
+  }
+
+  // --- Generation ---
+
+  /**
+   * Tabulates a circuit's Switches against its OutputProbes. Both are
+   * ordered top to bottom, like the pins of an IC made from the circuit.
+   */
+  public static TruthTable of(Circuit circuit) {
+    List<Switch> ins = new ArrayList<>();
+    List<OutputProbe> outs = new ArrayList<>();
+    for (Component c : circuit.getComponents()) {
+      if (c instanceof Switch s)
+        ins.add(s);
+      else if (c instanceof OutputProbe p)
+        outs.add(p);
+    }
+    ins.sort(Comparator.comparingInt(Component::getY));
+    outs.sort(Comparator.comparingInt(Component::getY));
+
+    Netlist nl = Netlist.compile(circuit);
+    int[] inGates = ins.stream().mapToInt(nl::indexOf).toArray();
+    int[] outGates = outs.stream().mapToInt(nl::indexOf).toArray();
+    return generate(nl, inGates, outGates, names(ins), names(outs), ForkJoinPool.commonPool());
+  }
+
+  /** Tabulates an IC's pins, starting from its definition's initial state. */
+  public static TruthTable of(CustomComponent chip) {
+    ChipDefinition def = chip.getDefinition();
+    return generate(def.getNetlist(), def.getInputGates(), def.getOutputGates(),
+        names(def.getInputPins()), names(def.getOutputPins()), ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Tabulates the given Switch gates against the first input of the given
+   * gates (usually OutputProbes).
+   *
+   * @throws IllegalArgumentException if there are more than MAX_INPUTS inputs
+   */
+  public static TruthTable generate(Netlist nl, int[] inputGates, int[] outputGates,
+      List<String> inputNames, List<String> outputNames, ForkJoinPool pool) {
+    if (inputGates.length > MAX_INPUTS)
+      throw new IllegalArgumentException(
+          inputGates.length + " inputs is too many to tabulate (limit " + MAX_INPUTS + ")");
+
+    long rows = 1L << inputGates.length;
+    int blocks = (int) ((rows + BitParallelSimulator.LANES - 1) / BitParallelSimulator.LANES);
+    long[][] columns = new long[outputGates.length][blocks];
+    AtomicInteger unsettled = new AtomicInteger();
+
+    pool.invoke(new Blocks(nl, inputGates, outputGates, columns, unsettled, 0, blocks));
+    if (rows < BitParallelSimulator.LANES) {
+      for (long[] col : columns)
+        col[0] &= (1L << rows) - 1; // Drop the repeated lanes past the last row
+    }
+    return new TruthTable(inputNames, outputNames, columns, unsettled.get());
+  }
+
+  private static final class Blocks extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Netlist nl;
+    private final int[] inputGates;
+    private final int[] outputGates;
+    private final long[][] columns;
+    private final AtomicInteger unsettled;
+    private final int from;
+    private final int to;
+
+    Blocks(Netlist nl, int[] inputGates, int[] outputGates, long[][] columns, AtomicInteger unsettled,
+        int from, int to) {
+      this.nl = nl;
+      this.inputGates = inputGates;
+      this.outputGates = outputGates;
+      this.columns = columns;
+      this.unsettled = unsettled;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > BLOCKS_PER_TASK) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Blocks(nl, inputGates, outputGates, columns, unsettled, from, mid),
+            new Blocks(nl, inputGates, outputGates, columns, unsettled, mid, to));
+        return;
+      }
+      BitParallelSimulator sim = new BitParallelSimulator(nl);
+      for (int block = from; block < to; block++) {
+        long first = (long) block * BitParallelSimulator.LANES;
+        if (block > from)
+          sim.reset();
+        for (int i = 0; i < inputGates.length; i++)
+          sim.setSwitchLanes(inputGates[i], BitParallelSimulator.exhaustiveLanes(i, first));
+        if (sim.settle(MAX_SWEEPS) < 0)
+          unsettled.incrementAndGet();
+        for (int j = 0; j < outputGates.length; j++)
+          columns[j][block] = sim.getInputLanes(outputGates[j], 0);
+      }
+    }
+  }
+
+  private static List<String> names(List<? extends Component> components) {
+    return components.stream().map(Component::getName).toList();
+  }
+
+  // --- Results ---
+
+  public List<String> getInputNames() {
+    return inputNames;
+  }
+
+  public List<String> getOutputNames() {
+    return outputNames;
+  }
+
+  public int getInputCount() {
+    return inputNames.size();
+  }
+
+  public int getOutputCount() {
+    return outputNames.size();
+  }
+
+  public long getRowCount() {
+    return 1L << inputNames.size();
+  }
+
+  public boolean get(long row, int output) {
+    return ((columns[output][(int) (row >>> 6)] >>> row) & 1L) != 0;
+  }
+
+  /** One row's outputs, bit j = output j. Only the first 64 outputs fit. */
+  public long getRow(long row) {
+    long bits = 0;
+    int n = Math.min(64, columns.length);
+    for (int j = 0; j < n; j++) {
+      if (get(row, j))
+        bits |= 1L << j;
+    }
+    return bits;
+  }
+
+  /** True unless some combination left the circuit oscillating. */
+  public boolean isSettled() {
+    return unsettledBlocks == 0;
+  }
+
+  // --- Export ---
+
+  /** Writes a header then one line per row: inputs, then outputs, as 0/1. */
+  public void writeCsv(Writer out) throws IOException {
+    out.write(String.join(",", inputNames));
+    if (!inputNames.isEmpty() && !outputNames.isEmpty())
+      out.write(',');
+    out.write(String.join(",", outputNames));
+    out.write('\n');
+
+    StringBuilder sb = new StringBuilder();
+    long rows = getRowCount();
+    for (long r = 0; r < rows; r++) {
+      sb.setLength(0);
+      for (int i = 0; i < inputNames.size(); i++) {
+        if (i > 0)
+          sb.append(',');
+        sb.append((char) ('0' + ((r >>> i) & 1)));
+      }
+      for (int j = 0; j < columns.length; j++) {
+        if (j > 0 || !inputNames.isEmpty())
+          sb.append(',');
+        sb.append(get(r, j) ? '1' : '0');
+      }
+      out.append(sb).append('\n');
+    }
+    out.flush();
+  }
+}
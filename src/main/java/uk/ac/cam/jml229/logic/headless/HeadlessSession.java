@@ -0,0 +1,411 @@
+package uk.ac.cam.jml229.logic.headless;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.io.OutputProbe;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.components.seq.Clock;
+import uk.ac.cam.jml229.logic.core.ActivityProfile;
+import uk.ac.cam.jml229.logic.core.Circuit;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
+import uk.ac.cam.jml229.logic.core.Simulator;
+import uk.ac.cam.jml229.logic.core.Simulator.RunResult;
+import uk.ac.cam.jml229.logic.core.netlist.Netlist;
+import uk.ac.cam.jml229.logic.core.netlist.NetlistSimulator;
+import uk.ac.cam.jml229.logic.core.netlist.PartitionedSimulator;
+import uk.ac.cam.jml229.logic.io.StorageManager;
+
+/**
+ * Drives a Circuit without any UI: Switches and OutputProbes are looked up
+ * by name, and time only moves when run() is called.
+ * Nothing here touches AWT beyond the plain java.awt.Point value class.
+ *
+ * The engine is configured explicitly rather than from the GUI's saved
+ * preferences, so a regression gives the same result on every machine.
+ * It can also be swapped for a compiled Netlist, which runs the same
+ * timing several times faster, on one thread or split across several;
+ * results then stay in the netlist until syncToCircuit(). close() the
+ * session to stop a partitioned engine's threads.
+ */
+public class HeadlessSession implements AutoCloseable {
+
+  public static final long DEFAULT_SETTLE_LIMIT = 1_000_000;
+
+  /** Which engine runs the circuit. */
+  public enum Engine {
+    /** The Circuit's own Simulator. Supports timed clocks and profiling. */
+    OBJECT,
+    /** A Netlist compiled once the circuit is loaded, on a NetlistSimulator. */
+    NETLIST,
+    /** The compiled Netlist split across threads by a PartitionedSimulator. */
+    PARTITIONED
+  }
+
+  private final Circuit circuit;
+  private final Simulator sim;
+  private final Engine engine;
+  private final Backend backend;
+  private final Map<String, List<Switch>> switches = new LinkedHashMap<>();
+  private final Map<String, List<OutputProbe>> probes = new LinkedHashMap<>();
+
+  public HeadlessSession(Circuit circuit, SimulationConfig config) {
+    this(circuit, config, Engine.OBJECT);
+  }
+
+  /**
+   * @throws IllegalArgumentException if a compiled engine is asked for but
+   *                                  the circuit has timed clocks
+   */
+  public HeadlessSession(Circuit circuit, SimulationConfig config, Engine engine) {
+    this(circuit, config, engine, 0);
+  }
+
+  /**
+   * @param partitions threads for the PARTITIONED engine, or 0 for
+   *                   PartitionedSimulator.defaultPartitions(); ignored
+   *                   by the other engines
+   * @throws IllegalArgumentException if a compiled engine is asked for but
+   *                                  the circuit has timed clocks
+   */
+  public HeadlessSession(Circuit circuit, SimulationConfig config, Engine engine, int partitions) {
+    if (partitions < 0)
+      throw new IllegalArgumentException("Partition count must not be negative");
+    this.circuit = circuit;
+    this.sim = circuit.getSimulator();
+    this.engine = engine;
+    configure(sim, config);
+
+    for (Component c : circuit.getComponents()) {
+      if (c instanceof Switch s)
+        switches.computeIfAbsent(s.getName(), k -> new ArrayList<>()).add(s);
+      else if (c instanceof OutputProbe p)
+        probes.computeIfAbsent(p.getName(), k -> new ArrayList<>()).add(p);
+      else if (c instanceof Clock k && k.isTimed() && engine != Engine.OBJECT)
+        throw new IllegalArgumentException("Clock '" + k.getName() + "' has a period, which only the object engine runs");
+    }
+
+    this.backend = switch (engine) {
+      case OBJECT -> new ObjectBackend();
+      case NETLIST -> new NetlistBackend(new NetlistSimulator(Netlist.compile(circuit), config));
+      case PARTITIONED -> {
+        Netlist nl = Netlist.compile(circuit);
+        int parts = (partitions > 0) ? partitions : PartitionedSimulator.defaultPartitions(nl);
+        yield new PartitionedBackend(new PartitionedSimulator(nl, config, parts));
+      }
+    };
+  }
+
+  /**
+   * Loads a saved circuit. The engine is configured before the file is
+   * read, so the initial settle already follows config.
+   */
+  public static HeadlessSession load(File file, SimulationConfig config) throws IOException {
+    return load(file, config, Engine.OBJECT);
+  }
+
+  public static HeadlessSession load(File file, SimulationConfig config, Engine engine) throws IOException {
+    return load(file, config, engine, 0);
+  }
+
+  public static HeadlessSession load(File file, SimulationConfig config, Engine engine, int partitions)
+      throws IOException {
+    Circuit circuit = new Circuit();
+    configure(circuit.getSimulator(), config);
+    return new HeadlessSession(StorageManager.load(file, circuit).circuit(), config, engine, partitions);
+  }
+
+  private static void configure(Simulator sim, SimulationConfig config) {
+    sim.setFastForward(true);
+    sim.setLevelized(true);
+    sim.setConfig(config);
+  }
+
+  /** The loaded circuit. With a compiled engine, syncToCircuit() first to see current values. */
+  public Circuit getCircuit() {
+    return circuit;
+  }
+
+  /** The circuit's own engine, which sits idle unless the engine is OBJECT. */
+  public Simulator getSimulator() {
+    return sim;
+  }
+
+  public Engine getEngine() {
+    return engine;
+  }
+
+  public List<String> getSwitchNames() {
+    return Collections.unmodifiableList(new ArrayList<>(switches.keySet()));
+  }
+
+  public List<String> getProbeNames() {
+    return Collections.unmodifiableList(new ArrayList<>(probes.keySet()));
+  }
+
+  // --- Stimulus ---
+
+  /** Sets a named Switch. Its effects are queued, not yet simulated. */
+  public void set(String name, boolean on) {
+    set(switchNamed(name), on);
+  }
+
+  public void set(Switch s, boolean on) {
+    backend.set(s, on);
+  }
+
+  /**
+   * Toggles every Clock without a period once, like one GUI clock edge.
+   * Clocks with a period follow simulated time instead.
+   */
+  public void tickClocks() {
+    backend.tickClocks();
+  }
+
+  // --- Running ---
+
+  /**
+   * Advances up to maxTicks ticks of simulated time, stopping early once
+   * no events remain (upcoming clock edges aside). Check
+   * RunResult.stable() to tell which happened.
+   */
+  public RunResult run(long maxTicks) {
+    return backend.run(maxTicks);
+  }
+
+  /**
+   * Simulates exactly the given number of ticks, firing every clock edge
+   * that falls inside them.
+   */
+  public void runFor(long ticks) {
+    backend.advanceTo(backend.getTick() + ticks);
+  }
+
+  /** Simulates up to the given absolute tick; earlier ticks are a no-op. */
+  public void runTo(long tick) {
+    backend.advanceTo(tick);
+  }
+
+  public long getTick() {
+    return backend.getTick();
+  }
+
+  /**
+   * Starts counting toggles and evaluations afresh, or stops.
+   *
+   * @throws IllegalStateException unless the engine is OBJECT
+   */
+  public void setProfiling(boolean enabled) {
+    if (engine != Engine.OBJECT)
+      throw new IllegalStateException("Profiling needs the object engine");
+    sim.setProfiling(enabled);
+  }
+
+  /** Counts since the last setProfiling(true), or null if off. */
+  public ActivityProfile getProfile() {
+    return sim.getProfile();
+  }
+
+  // --- Results ---
+
+  public boolean read(String name) {
+    return read(probeNamed(name));
+  }
+
+  public boolean read(OutputProbe p) {
+    return backend.read(p);
+  }
+
+  /** Copies a compiled engine's values onto the circuit's Wires and pins. */
+  public void syncToCircuit() {
+    backend.syncToCircuit();
+  }
+
+  /** Releases the engine's worker threads, if it has any. */
+  @Override
+  public void close() {
+    backend.close();
+  }
+
+  public Switch switchNamed(String name) {
+    return unique(switches, name, "Switch");
+  }
+
+  public OutputProbe probeNamed(String name) {
+    return unique(probes, name, "OutputProbe");
+  }
+
+  private static <T> T unique(Map<String, List<T>> byName, String name, String kind) {
+    List<T> found = byName.get(name);
+    if (found == null)
+      throw new IllegalArgumentException("No " + kind + " named '" + name + "'");
+    if (found.size() > 1)
+      throw new IllegalArgumentException(found.size() + " components share the " + kind + " name '" + name + "'");
+    return found.get(0);
+  }
+
+  // --- Engines ---
+
+  // What the session needs from whichever engine runs the circuit
+  private interface Backend {
+    void set(Switch s, boolean on);
+
+    void tickClocks();
+
+    RunResult run(long maxTicks);
+
+    void advanceTo(long tick);
+
+    long getTick();
+
+    boolean read(OutputProbe p);
+
+    void syncToCircuit();
+
+    void close();
+  }
+
+  private final class ObjectBackend implements Backend {
+    @Override
+    public void set(Switch s, boolean on) {
+      s.toggle(on);
+    }
+
+    @Override
+    public void tickClocks() {
+      circuit.tick();
+    }
+
+    @Override
+    public RunResult run(long maxTicks) {
+      return sim.runUntilStable(maxTicks);
+    }
+
+    @Override
+    public void advanceTo(long tick) {
+      sim.advanceTo(tick);
+    }
+
+    @Override
+    public long getTick() {
+      return sim.getTick();
+    }
+
+    @Override
+    public boolean read(OutputProbe p) {
+      return p.getState();
+    }
+
+    @Override
+    public void syncToCircuit() {
+      // Always in sync
+    }
+
+    @Override
+    public void close() {
+      // No threads of its own
+    }
+  }
+
+  private static final class NetlistBackend implements Backend {
+    private final NetlistSimulator ns;
+
+    NetlistBackend(NetlistSimulator ns) {
+      this.ns = ns;
+    }
+
+    @Override
+    public void set(Switch s, boolean on) {
+      ns.setSwitch(s, on);
+    }
+
+    @Override
+    public void tickClocks() {
+      ns.tickClocks();
+    }
+
+    @Override
+    public RunResult run(long maxTicks) {
+      return ns.runUntilStable(maxTicks);
+    }
+
+    @Override
+    public void advanceTo(long tick) {
+      ns.advanceTo(tick);
+    }
+
+    @Override
+    public long getTick() {
+      return ns.getTick();
+    }
+
+    @Override
+    public boolean read(OutputProbe p) {
+      return ns.getInput(p, 0);
+    }
+
+    @Override
+    public void syncToCircuit() {
+      ns.syncToCircuit();
+    }
+
+    @Override
+    public void close() {
+      // Single-threaded
+    }
+  }
+
+  private static final class PartitionedBackend implements Backend {
+    private final PartitionedSimulator ps;
+
+    PartitionedBackend(PartitionedSimulator ps) {
+      this.ps = ps;
+    }
+
+    @Override
+    public void set(Switch s, boolean on) {
+      ps.setSwitch(s, on);
+    }
+
+    @Override
+    public void tickClocks() {
+      ps.tickClocks();
+    }
+
+    @Override
+    public RunResult run(long maxTicks) {
+      return ps.runUntilStable(maxTicks);
+    }
+
+    @Override
+    public void advanceTo(long tick) {
+      ps.advanceTo(tick);
+    }
+
+    @Override
+    public long getTick() {
+      return ps.getTick();
+    }
+
+    @Override
+    public boolean read(OutputProbe p) {
+      return ps.getInput(p, 0);
+    }
+
+    @Override
+    public void syncToCircuit() {
+      ps.syncToCircuit();
+    }
+
+    @Override
+    public void close() {
+      ps.close();
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package uk.ac.cam.jml229.logic.headless;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+import uk.ac.cam.jml229.logic.components.io.OutputProbe;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.core.Simulator.RunResult;
+
+/**
+ * Streams a stimulus file against a HeadlessSession, one line at a time,
+ * so vector files of any length run in constant memory.
+ *
+ * <pre>
+ * # Comments and blank lines are ignored
+ * INPUTS A B Cin          Switches driven by each vector, in column order
+ * OUTPUTS Sum Cout        OutputProbes checked by each vector
+ * 0 0 0 | 0 0             a vector: inputs | expected outputs
+ * 110 | 01                spaces between values are optional
+ * &#64;200 1 1 1 | 1 1        drive at absolute tick 200
+ * +50 - 0 - | x 0         drive 50 ticks after the previous vector
+ * CLOCK 2                 toggle the Clocks twice, settling after each
+ * </pre>
+ *
+ * Each vector waits until its tick (if given), drives its inputs, lets the
+ * circuit settle and then compares the probes. An input of '-' leaves the
+ * Switch as it is; an expected 'x' is not checked. INPUTS and OUTPUTS may
+ * be redeclared at any point.
+ */
+public class Testbench {
+
+  /** One probe that read differently from the vector's expectation. */
+  public record Mismatch(int line, long tick, String probe, boolean expected, boolean actual) {
+    @Override
+    public String toString() {
+      return "line " + line + " @" + tick + ": " + probe + " expected " + (expected ? 1 : 0)
+          + " got " + (actual ? 1 : 0);
+    }
+  }
+
+  /** Totals for a whole run. A vector that fails several probes counts once. */
+  public record Report(long vectors, long failedVectors, long mismatches, long unsettled, long ticks, long nanos) {
+    public boolean passed() {
+      return failedVectors == 0 && unsettled == 0;
+    }
+
+    public double vectorsPerSecond() {
+      return nanos == 0 ? 0 : vectors * 1e9 / nanos;
+    }
+  }
+
+  private static final byte KEEP = -1; // '-' input or 'x' expectation
+
+  private final HeadlessSession session;
+  private final long settleLimit;
+
+  private Switch[] inputs = new Switch[0];
+  private OutputProbe[] outputs = new OutputProbe[0];
+  private String[] outputNames = new String[0];
+  private byte[] drive = new byte[0];
+  private byte[] expect = new byte[0];
+
+  public Testbench(HeadlessSession session, long settleLimit) {
+    this.session = session;
+    this.settleLimit = settleLimit;
+  }
+
+  /**
+   * Runs every line of the stimulus. Mismatches go to the callback as
+   * they are found and are not kept.
+   *
+   * @throws IllegalArgumentException for a malformed line or unknown name
+   */
+  public Report run(Reader stimulus, Consumer<Mismatch> onMismatch) throws IOException {
+    BufferedReader in = stimulus instanceof BufferedReader b ? b : new BufferedReader(stimulus);
+    long startTick = session.getTick();
+    long start = System.nanoTime();
+    long vectors = 0, failed = 0, mismatches = 0, unsettled = 0;
+
+    String line;
+    int lineNo = 0;
+    while ((line = in.readLine()) != null) {
+      lineNo++;
+      try {
+        String text = stripComment(line);
+        if (text.isEmpty())
+          continue;
+
+        if (Character.isLetter(text.charAt(0))) {
+          if (!directive(text))
+            unsettled++;
+          continue;
+        }
+
+        int pos = parseVector(text);
+        if (pos > 0 && text.charAt(0) == '@')
+          session.runTo(tickAt(text, pos));
+        else if (pos > 0)
+          session.runTo(session.getTick() + parseLong(text.substring(1, pos)));
+
+        for (int i = 0; i < inputs.length; i++) {
+          if (drive[i] != KEEP)
+            session.set(inputs[i], drive[i] == 1);
+        }
+        if (!settle())
+          unsettled++;
+
+        vectors++;
+        int bad = 0;
+        for (int j = 0; j < outputs.length; j++) {
+          boolean actual = session.read(outputs[j]);
+          if (expect[j] != KEEP && actual != (expect[j] == 1)) {
+            bad++;
+            onMismatch.accept(new Mismatch(lineNo, session.getTick(), outputNames[j], expect[j] == 1, actual));
+          }
+        }
+        if (bad > 0) {
+          failed++;
+          mismatches += bad;
+        }
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("line " + lineNo + ": " + e.getMessage(), e);
+      }
+    }
+    return new Report(vectors, failed, mismatches, unsettled, session.getTick() - startTick,
+        System.nanoTime() - start);
+  }
+
+  private boolean settle() {
+    RunResult r = session.run(settleLimit);
+    return r.stable();
+  }
+
+  // --- Directives ---
+
+  // Returns false if a CLOCK step failed to settle
+  private boolean directive(String text) {
+    String[] words = text.split("\\s+");
+    switch (words[0]) {
+      case "INPUTS" -> {
+        inputs = new Switch[words.length - 1];
+        for (int i = 0; i < inputs.length; i++)
+          inputs[i] = session.switchNamed(words[i + 1]);
+        drive = new byte[inputs.length];
+      }
+      case "OUTPUTS" -> {
+        outputs = new OutputProbe[words.length - 1];
+        outputNames = new String[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+          outputNames[i] = words[i + 1];
+          outputs[i] = session.probeNamed(words[i + 1]);
+        }
+        expect = new byte[outputs.length];
+      }
+      case "CLOCK" -> {
+        long n = words.length > 1 ? parseLong(words[1]) : 1;
+        boolean stable = true;
+        for (long k = 0; k < n; k++) {
+          session.tickClocks();
+          stable &= settle();
+        }
+        return stable;
+      }
+      default -> throw new IllegalArgumentException("Unknown directive '" + words[0] + "'");
+    }
+    return true;
+  }
+
+  // --- Vector Parsing ---
+
+  /**
+   * Fills drive and expect from a vector line.
+   *
+   * @return the length of the leading @tick / +delay token, or 0 if none
+   */
+  private int parseVector(String text) {
+    int pos = 0;
+    if (text.charAt(0) == '@' || text.charAt(0) == '+') {
+      pos = 1;
+      while (pos < text.length() && !Character.isWhitespace(text.charAt(pos)))
+        pos++;
+    }
+    int timeEnd = pos;
+
+    int bar = text.indexOf('|', pos);
+    if (bar < 0 && outputs.length > 0)
+      throw new IllegalArgumentException("Expected 'inputs | outputs'");
+    int end = bar < 0 ? text.length() : bar;
+
+    readValues(text, timeEnd, end, drive, "input", '-');
+    if (bar >= 0)
+      readValues(text, bar + 1, text.length(), expect, "output", 'x');
+    return timeEnd;
+  }
+
+  private static void readValues(String text, int from, int to, byte[] into, String kind, char skip) {
+    int n = 0;
+    for (int i = from; i < to; i++) {
+      char c = text.charAt(i);
+      if (Character.isWhitespace(c) || c == '_')
+        continue;
+      if (n == into.length)
+        throw new IllegalArgumentException("Too many " + kind + " values (expected " + into.length + ")");
+      if (c == '0' || c == '1')
+        into[n++] = (byte) (c - '0');
+      else if (c == skip || Character.toLowerCase(c) == skip)
+        into[n++] = KEEP;
+      else
+        throw new IllegalArgumentException("Bad " + kind + " value '" + c + "'");
+    }
+    if (n != into.length)
+      throw new IllegalArgumentException("Expected " + into.length + " " + kind + " values but got " + n);
+  }
+
+  private long tickAt(String text, int pos) {
+    long tick = parseLong(text.substring(1, pos));
+    if (tick < session.getTick())
+      throw new IllegalArgumentException("Tick " + tick + " is already past (now " + session.getTick() + ")");
+    return tick;
+  }
+
+  private static long parseLong(String s) {
+    try {
+      long n = Long.parseLong(s);
+      if (n >= 0)
+        return n;
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new IllegalArgumentException("Expected a non-negative number but got '" + s + "'");
+  }
+
+  private static String stripComment(String line) {
+    int hash = line.indexOf('#');
+    return (hash < 0 ? line : line.substring(0, hash)).strip();
+  }
+}
@@ -1,7 +1,12 @@
 package uk.ac.cam.jml229.logic.io;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.prefs.Preferences;
 
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
+
 public class SettingsManager {
 
   private static final Preferences prefs = Preferences.userNodeForPackage(SettingsManager.class);
@@ -21,20 +26,53 @@ public class SettingsManager {
 
   private static final String DEFAULT_THEME = "Default Light";
 
+  // In-memory copy of the simulation settings, so the engine never has to
+  // touch the Preferences backend while it is running.
+  private static volatile SimulationConfig simConfig = new SimulationConfig(
+      prefs.getBoolean(KEY_PROP_DELAY_ENABLED, SimulationConfig.DEFAULTS.propagationDelayEnabled()),
+      prefs.getInt(KEY_GATE_DELAY, SimulationConfig.DEFAULTS.gateDelay()));
+
+  private static final List<Consumer<SimulationConfig>> simConfigListeners = new CopyOnWriteArrayList<>();
+
+  public static SimulationConfig getSimulationConfig() {
+    return simConfig;
+  }
+
+  /**
+   * Persists the simulation settings and publishes the new snapshot
+   * to every registered listener.
+   */
+  public static void setSimulationConfig(SimulationConfig config) {
+    prefs.putBoolean(KEY_PROP_DELAY_ENABLED, config.propagationDelayEnabled());
+    prefs.putInt(KEY_GATE_DELAY, config.gateDelay());
+    simConfig = config;
+    for (Consumer<SimulationConfig> listener : simConfigListeners) {
+      listener.accept(config);
+    }
+  }
+
+  public static void addSimulationConfigListener(Consumer<SimulationConfig> listener) {
+    simConfigListeners.add(listener);
+  }
+
+  public static void removeSimulationConfigListener(Consumer<SimulationConfig> listener) {
+    simConfigListeners.remove(listener);
+  }
+
   public static boolean isPropagationDelayEnabled() {
-    return prefs.getBoolean(KEY_PROP_DELAY_ENABLED, true);
+    return simConfig.propagationDelayEnabled();
   }
 
   public static void setPropagationDelayEnabled(boolean enabled) {
-    prefs.putBoolean(KEY_PROP_DELAY_ENABLED, enabled);
+    setSimulationConfig(simConfig.withPropagationDelayEnabled(enabled));
   }
 
   public static int getGateDelay() {
-    return prefs.getInt(KEY_GATE_DELAY, 1);
+    return simConfig.gateDelay();
   }
 
   public static void setGateDelay(int delay) {
-    prefs.putInt(KEY_GATE_DELAY, delay);
+    setSimulationConfig(simConfig.withGateDelay(delay));
   }
 
   public static String getThemeName() {
@@ -9,12 +9,14 @@ import uk.ac.cam.jml229.logic.components.*;
 import uk.ac.cam.jml229.logic.components.Component;
 import uk.ac.cam.jml229.logic.components.gates.LogicGate;
 import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.components.seq.Clock;
 import uk.ac.cam.jml229.logic.core.Circuit;
 import uk.ac.cam.jml229.logic.core.Wire;
 
 public class StorageManager {
 
-  private static final int CURRENT_VERSION = 6;
+  private static final int CURRENT_VERSION = 7; // 7: timed clocks (PERIOD/PHASE)
+  private static final Pattern WIRE_LINE = Pattern.compile("WIRE (\\d+):(\\d+) (\\d+):(\\d+)(?: \\[(.*)\\])?");
 
   public static void save(File file, Circuit circuit, List<Component> paletteTools) throws IOException {
     try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
@@ -23,13 +25,21 @@ public class StorageManager {
   }
 
   public static LoadResult load(File file) throws IOException {
+    return load(file, new Circuit());
+  }
+
+  /**
+   * Loads into an empty circuit supplied by the caller, so its simulator
+   * can be configured before the loaded parts are first evaluated.
+   */
+  public static LoadResult load(File file, Circuit into) throws IOException {
     StringBuilder content = new StringBuilder();
     try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
       String line;
       while ((line = reader.readLine()) != null)
         content.append(line).append("\n");
     }
-    return loadFromString(content.toString());
+    return loadFromString(content.toString(), into);
   }
 
   public static String saveToString(Circuit circuit, List<Component> paletteTools) {
@@ -60,11 +70,17 @@ public class StorageManager {
   }
 
   public static LoadResult loadFromString(String data) throws IOException {
+    return loadFromString(data, new Circuit());
+  }
+
+  public static LoadResult loadFromString(String data, Circuit into) throws IOException {
     BufferedReader reader = new BufferedReader(new StringReader(data));
     String line;
     int version = 0;
 
-    Circuit mainCircuit = new Circuit();
+    // Each circuit is wired up in one transaction and evaluated once at the end
+    Circuit mainCircuit = into;
+    mainCircuit.beginTransaction();
     Map<String, CustomComponent> prototypes = new HashMap<>();
 
     Circuit currentCircuit = null;
@@ -88,10 +104,13 @@ public class StorageManager {
         case "DEF" -> {
           currentDefName = parseString(line.substring(4));
           currentCircuit = new Circuit();
+          currentCircuit.getSimulator().setConfig(mainCircuit.getSimulator().getConfig());
+          currentCircuit.beginTransaction();
           idMap.clear();
         }
         case "ENDDEF" -> {
-          if (currentDefName != null && currentCircuit != null) {
+          if (currentDefName != null && currentCircuit != null && currentCircuit != mainCircuit) {
+            currentCircuit.commitTransaction();
             prototypes.put(currentDefName, new CustomComponent(currentDefName, currentCircuit));
           }
           currentCircuit = null;
@@ -113,6 +132,7 @@ public class StorageManager {
         }
       }
     }
+    mainCircuit.commitTransaction();
     return new LoadResult(mainCircuit, new ArrayList<>(prototypes.values()));
   }
 
@@ -168,6 +188,10 @@ public class StorageManager {
         extra += " IS_ON:" + ((Switch) c).getState();
       }
 
+      if (c instanceof Clock k && k.isTimed()) {
+        extra += " PERIOD:" + k.getPeriod() + " PHASE:" + k.getPhase();
+      }
+
       writer.printf("COMP %s %d %d %d %d%s%n", type, id, c.getX(), c.getY(), c.getRotation(), extra);
     }
 
@@ -255,6 +279,23 @@ public class StorageManager {
             }
           }
 
+          // Timed clocks, from version 7 (PHASE only means anything with a PERIOD)
+          if (fileVersion >= 7 && part.startsWith("PERIOD:") && c instanceof Clock k) {
+            try {
+              k.setTiming(Long.parseLong(part.substring(7)), k.getPhase());
+            } catch (IllegalArgumentException e) {
+              // ignore
+            }
+          }
+
+          if (fileVersion >= 7 && part.startsWith("PHASE:") && c instanceof Clock k) {
+            try {
+              k.setTiming(k.getPeriod(), Long.parseLong(part.substring(6)));
+            } catch (IllegalArgumentException e) {
+              // ignore
+            }
+          }
+
           if (part.startsWith("IS_ON:") && c instanceof Switch) {
             try {
               boolean isOn = Boolean.parseBoolean(part.substring(6));
@@ -275,8 +316,7 @@ public class StorageManager {
 
   private static void parseWire(String line, Circuit circuit, Map<Integer, Component> idMap) {
     try {
-      Pattern p = Pattern.compile("WIRE (\\d+):(\\d+) (\\d+):(\\d+)(?: \\[(.*)\\])?");
-      Matcher m = p.matcher(line);
+      Matcher m = WIRE_LINE.matcher(line);
       if (m.find()) {
         Component src = idMap.get(Integer.parseInt(m.group(1)));
         int srcIdx = Integer.parseInt(m.group(2));
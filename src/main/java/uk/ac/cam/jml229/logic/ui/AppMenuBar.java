@@ -32,6 +32,7 @@ public class AppMenuBar extends JMenuBar {
   private final Runnable toggleTimingCallback;
 
   private final JLabel zoomStatusLabel;
+  private final JLabel simStatsLabel;
 
   public AppMenuBar(JFrame parentFrame,
       CircuitPanel circuitPanel,
@@ -57,6 +58,8 @@ public class AppMenuBar extends JMenuBar {
 
     this.zoomStatusLabel = new JLabel("Zoom: 100%  ");
     this.zoomStatusLabel.setForeground(Color.GRAY);
+    this.simStatsLabel = new JLabel("");
+    this.simStatsLabel.setForeground(Color.GRAY);
 
     initMenus();
     updateTheme();
@@ -112,13 +115,23 @@ public class AppMenuBar extends JMenuBar {
       SettingsManager.setSnapToGrid(val);
     });
     viewMenu.add(snapGridItem);
+
+    // Profiling only runs while the heat map is shown
+    JCheckBoxMenuItem heatMapItem = new JCheckBoxMenuItem("Activity Heat Map");
+    heatMapItem.addActionListener(e -> {
+      boolean val = heatMapItem.isSelected();
+      simController.setProfiling(val);
+      circuitPanel.getRenderer().setHeatMap(val);
+      circuitPanel.repaint();
+    });
+    viewMenu.add(heatMapItem);
     add(viewMenu);
 
     // --- TOOLS ---
     JMenu toolsMenu = new JMenu("Tools");
     addItem(toolsMenu, "Auto-Organise Workspace", KeyEvent.VK_L, e -> {
       circuitInteraction.saveHistory();
-      AutoLayout.organise(circuitPanel.getCircuit());
+      circuitInteraction.edit(() -> AutoLayout.organise(circuitPanel.getCircuit()));
       circuitPanel.centerCircuit();
       circuitPanel.repaint();
       circuitPanel.getInteraction().saveHistory();
@@ -131,7 +144,10 @@ public class AppMenuBar extends JMenuBar {
     JMenuItem startItem = new JMenuItem("Start");
     startItem.addActionListener(e -> simController.start());
     JMenuItem stopItem = new JMenuItem("Stop");
-    stopItem.addActionListener(e -> simController.stop());
+    stopItem.addActionListener(e -> {
+      simController.stop();
+      updateSimStats(0, 0);
+    });
     JMenuItem stepItem = new JMenuItem("Step (Manual Tick)");
     stepItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_T, 0));
     stepItem.addActionListener(e -> simController.step());
@@ -147,7 +163,11 @@ public class AppMenuBar extends JMenuBar {
 
     JMenu logicSpeedMenu = new JMenu("Logic Speed (Propagation)");
     ButtonGroup logicGroup = new ButtonGroup();
-    addLogicSpeedItem(logicSpeedMenu, logicGroup, "Instant (1000 updates/frame)", 1000, true);
+    addBudgetItem(logicSpeedMenu, logicGroup, "Adaptive (Fill Each Frame)", SimulationController.Budget.ADAPTIVE, true);
+    addBudgetItem(logicSpeedMenu, logicGroup, "Max Throughput (Drop Frames)", SimulationController.Budget.MAX_THROUGHPUT,
+        false);
+    logicSpeedMenu.addSeparator();
+    addLogicSpeedItem(logicSpeedMenu, logicGroup, "Instant (1000 updates/frame)", 1000, false);
     addLogicSpeedItem(logicSpeedMenu, logicGroup, "Fast (50 updates/frame)", 50, false);
     addLogicSpeedItem(logicSpeedMenu, logicGroup, "Visible (5 updates/frame)", 5, false);
     addLogicSpeedItem(logicSpeedMenu, logicGroup, "Slow Motion (1 update/frame)", 1, false);
@@ -161,6 +181,7 @@ public class AppMenuBar extends JMenuBar {
     add(simMenu);
 
     add(Box.createHorizontalGlue());
+    add(simStatsLabel);
     add(zoomStatusLabel);
   }
 
@@ -221,6 +242,15 @@ public class AppMenuBar extends JMenuBar {
     menu.add(item);
   }
 
+  private void addBudgetItem(JMenu menu, ButtonGroup group, String label, SimulationController.Budget budget,
+      boolean selected) {
+    JRadioButtonMenuItem item = new JRadioButtonMenuItem(label);
+    item.setSelected(selected);
+    item.addActionListener(e -> simController.setBudget(budget));
+    group.add(item);
+    menu.add(item);
+  }
+
   private void addSelectionToTiming() {
     List<Component> selection = circuitPanel.getInteraction().getSelectedComponents();
     if (selection.isEmpty()) {
@@ -248,6 +278,24 @@ public class AppMenuBar extends JMenuBar {
     }
   }
 
+  /** Shows the simulation's achieved rates; zero hides them. */
+  public void updateSimStats(double ticksPerSecond, double eventsPerSecond) {
+    String text = (ticksPerSecond <= 0 && eventsPerSecond <= 0) ? ""
+        : formatRate(ticksPerSecond) + " ticks/s  " + formatRate(eventsPerSecond) + " events/s    ";
+    if (!text.equals(simStatsLabel.getText()))
+      simStatsLabel.setText(text);
+  }
+
+  private static String formatRate(double r) {
+    if (r >= 1e9)
+      return String.format("%.1fG", r / 1e9);
+    if (r >= 1e6)
+      return String.format("%.1fM", r / 1e6);
+    if (r >= 1e3)
+      return String.format("%.1fk", r / 1e3);
+    return String.format("%.0f", r);
+  }
+
   public void updateZoomLabel(double scale) {
     int pct = (int) (scale * 100);
     zoomStatusLabel.setText("Zoom: " + pct + "%  ");
@@ -270,6 +318,8 @@ public class AppMenuBar extends JMenuBar {
 
     if (zoomStatusLabel != null)
       zoomStatusLabel.setForeground(Theme.PALETTE_HEADINGS);
+    if (simStatsLabel != null)
+      simStatsLabel.setForeground(Theme.PALETTE_HEADINGS);
 
     SwingUtilities.updateComponentTreeUI(this);
   }
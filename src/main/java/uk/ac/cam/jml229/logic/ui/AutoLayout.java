@@ -90,7 +90,7 @@ public class AutoLayout {
           nx = (nx / GRID_SIZE) * GRID_SIZE;
           ny = (ny / GRID_SIZE) * GRID_SIZE;
 
-          c.setPosition(nx, ny);
+          circuit.moveComponent(c, nx, ny);
         }
       }
     }
@@ -147,13 +147,8 @@ public class AutoLayout {
 
         List<Point> newPath = findPath(start, end, obstacles);
 
-        pc.waypoints.clear();
-        if (newPath.size() > 2) {
-          // Exclude start and end points
-          for (int i = 1; i < newPath.size() - 1; i++) {
-            pc.waypoints.add(newPath.get(i));
-          }
-        }
+        // Exclude start and end points
+        circuit.setWaypoints(pc, newPath.size() > 2 ? newPath.subList(1, newPath.size() - 1) : List.of());
       }
     }
   }
@@ -4,6 +4,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import uk.ac.cam.jml229.logic.app.Theme;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
 import uk.ac.cam.jml229.logic.io.SettingsManager;
 
 public class SettingsDialog extends JDialog {
@@ -76,8 +77,9 @@ public class SettingsDialog extends JDialog {
 
     JButton okBtn = createStyledButton("OK");
     okBtn.addActionListener(e -> {
-      SettingsManager.setPropagationDelayEnabled(enableDelay.isSelected());
-      SettingsManager.setGateDelay((Integer) delaySpinner.getValue());
+      // Publish both values as one snapshot
+      SettingsManager.setSimulationConfig(
+          new SimulationConfig(enableDelay.isSelected(), (Integer) delaySpinner.getValue()));
       dispose();
     });
 
@@ -0,0 +1,141 @@
+package uk.ac.cam.jml229.logic.ui;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.io.OutputProbe;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.components.seq.Clock;
+import uk.ac.cam.jml229.logic.core.ActivityProfile;
+import uk.ac.cam.jml229.logic.core.Circuit;
+import uk.ac.cam.jml229.logic.core.Wire;
+
+/**
+ * Every wire signal and Switch / Clock / probe state of a circuit, copied
+ * by the simulation thread at the end of a frame. The renderer and timing
+ * diagram read one snapshot per paint, so a frame never mixes values from
+ * before and after a simulation step.
+ *
+ * Anything added since the snapshot's Layout was built falls back to its
+ * live value.
+ *
+ * While the engine is profiling, a snapshot also carries each wire's
+ * toggle count relative to the busiest wire, for the heat map.
+ */
+public final class SignalSnapshot {
+
+  /** Reads everything live; used before the first frame. */
+  public static final SignalSnapshot LIVE = new SignalSnapshot(null, new long[0], null, 0);
+
+  /**
+   * What a snapshot covers and where each bit goes. Rebuilt by the
+   * simulation thread after structural edits, shared by snapshots between.
+   */
+  static final class Layout {
+    private final Object[] keys;
+    private final Map<Object, Integer> index = new IdentityHashMap<>();
+
+    Layout(Circuit circuit) {
+      List<Object> all = new ArrayList<>(circuit.getWires());
+      for (Component c : circuit.getComponents()) {
+        if (c instanceof Switch || c instanceof Clock || c instanceof OutputProbe)
+          all.add(c);
+      }
+      keys = all.toArray();
+      for (int i = 0; i < keys.length; i++)
+        index.put(keys[i], i);
+    }
+  }
+
+  private final Layout layout;
+  private final long[] bits;
+  private final float[] heat; // Null unless profiling
+  private final long tick;
+
+  private SignalSnapshot(Layout layout, long[] bits, float[] heat, long tick) {
+    this.layout = layout;
+    this.bits = bits;
+    this.heat = heat;
+    this.tick = tick;
+  }
+
+  /**
+   * Copies the current values. Must run on the thread driving the circuit.
+   *
+   * @param profile the engine's activity profile, or null if not profiling
+   */
+  static SignalSnapshot capture(Layout layout, long tick, ActivityProfile profile) {
+    Object[] keys = layout.keys;
+    long[] bits = new long[(keys.length + 63) >>> 6];
+    for (int i = 0; i < keys.length; i++) {
+      if (read(keys[i]))
+        bits[i >>> 6] |= 1L << i;
+    }
+    float[] heat = null;
+    if (profile != null) {
+      heat = new float[keys.length];
+      long max = Math.max(1, profile.getMaxToggles());
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] instanceof Wire w)
+          heat[i] = (float) profile.getToggles(w) / max;
+      }
+    }
+    return new SignalSnapshot(layout, bits, heat, tick);
+  }
+
+  private static boolean read(Object key) {
+    if (key instanceof Wire w)
+      return w.getSignal();
+    if (key instanceof Switch s)
+      return s.getState();
+    if (key instanceof Clock c)
+      return c.getState();
+    return ((OutputProbe) key).getState();
+  }
+
+  private boolean get(Object key) {
+    Integer i = (layout == null) ? null : layout.index.get(key);
+    if (i == null)
+      return read(key);
+    return ((bits[i >>> 6] >>> i) & 1L) != 0;
+  }
+
+  public boolean getSignal(Wire w) {
+    return get(w);
+  }
+
+  public boolean getState(Switch s) {
+    return get(s);
+  }
+
+  public boolean getState(Clock c) {
+    return get(c);
+  }
+
+  public boolean getState(OutputProbe p) {
+    return get(p);
+  }
+
+  /** True if the engine was profiling, so getHeat() means something. */
+  public boolean hasHeat() {
+    return heat != null;
+  }
+
+  /**
+   * How often the wire toggled, from 0 (never) to 1 (as often as the
+   * busiest wire). Zero without a profile or for wires newer than the
+   * snapshot.
+   */
+  public float getHeat(Wire w) {
+    Integer i = (heat == null) ? null : layout.index.get(w);
+    return (i == null) ? 0 : heat[i];
+  }
+
+  /** Simulation tick the values were taken at. */
+  public long getTick() {
+    return tick;
+  }
+}
@@ -1,58 +1,256 @@
 package uk.ac.cam.jml229.logic.ui;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import uk.ac.cam.jml229.logic.core.Circuit;
 import uk.ac.cam.jml229.logic.core.Simulator;
+import uk.ac.cam.jml229.logic.io.SettingsManager;
 
 /**
  * Manages the simulation loop, clock timing, and logic propagation.
  * Decouples the "Game Loop" from the main GUI window.
+ *
+ * The circuit is simulated on its own thread, so a heavy circuit slows
+ * the simulation rather than the editor. The EDT never touches the
+ * engine directly: Switch toggles and settings go through submit(), and
+ * structural edits through edit(), which waits until the simulation
+ * thread has applied them. Both feed a lock-free queue that the thread
+ * drains between short slices of simulated time. At the end of each frame
+ * the thread publishes a SignalSnapshot, which a 60 Hz Swing timer hands
+ * to the renderer and timing diagram.
+ *
+ * How much simulated time a frame gets depends on the Budget: a fixed
+ * number of ticks, as many as fit in TARGET_WORK_NANOS (sized from the
+ * measured cost per tick), or everything the CPU can do, publishing only
+ * a few frames a second. The budget never affects clock timing: clocks
+ * are checked against wall time before every slice, and the thread wakes
+ * for a clock edge even in the middle of a long frame.
+ *
+ * Engine metrics (event rate, queue depth, ticks per frame, time in
+ * run() and time to settle after an input change) are published with
+ * each frame. They are readable here, over JMX via SimulationMetrics,
+ * and as Flight Recorder events (see SimulationEvents).
  */
 public class SimulationController {
 
+  /** How the thread decides how much to simulate per frame. */
+  public enum Budget {
+    /** logicStepsPerFrame ticks, however long they take. */
+    FIXED,
+    /** As many ticks as fit in TARGET_WORK_NANOS of each frame. */
+    ADAPTIVE,
+    /** Never stop for a frame; publish a snapshot every THROUGHPUT_FRAME_NANOS. */
+    MAX_THROUGHPUT
+  }
+
+  private static final long FRAME_NANOS = 16_666_667L;
+  private static final long THROUGHPUT_FRAME_NANOS = 250_000_000L;
+
+  // Share of a frame spent simulating in ADAPTIVE mode
+  private static final long TARGET_WORK_NANOS = 12_000_000L;
+
+  // Longest slice between checks of the command queue
+  private static final long SLICE_NANOS = 2_000_000L;
+  private static final int SLICE_TICKS = 32; // FIXED mode
+  private static final int MAX_SLICE_TICKS = 1 << 20;
+
+  private static final long STATS_WINDOW_NANOS = 500_000_000L;
+
   private final Timer timer;
   private final Runnable repaintCallback;
-  private Circuit circuit;
+  private final Runnable redraw;
+  private final Thread thread;
+  private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+  // Shared with the EDT
+  private volatile boolean running = false;
+  private volatile SignalSnapshot snapshot = SignalSnapshot.LIVE;
 
   // Simulation Settings
-  private int logicStepsPerFrame = 1000;
-  private int clockDelayMs = 500;
-  private long lastClockTick = 0;
+  private volatile int logicStepsPerFrame = 1000;
+  private volatile int clockDelayMs = 500;
+  private volatile Budget budget = Budget.ADAPTIVE;
+  private volatile boolean profiling = false;
+
+  // Achieved rates, refreshed every STATS_WINDOW_NANOS
+  private volatile double ticksPerSecond = 0;
+  private volatile double eventsPerSecond = 0;
+  private volatile double runLoad = 0;
+
+  // Metrics, published at the end of each frame
+  private volatile long publishedEvents = 0;
+  private volatile long publishedRunNanos = 0;
+  private volatile int queueDepth = 0;
+  private volatile int peakQueueDepth = 0;
+  private volatile long ticksLastFrame = 0;
+  private volatile long lastSettleNanos = 0;
+  private volatile long lastSettleTicks = 0;
+  private volatile long maxSettleNanos = 0;
+
+  // Only touched on the simulation thread
+  private Circuit circuit;
+  private SignalSnapshot.Layout layout;
+  private boolean layoutDirty = false; // Set by the circuit's change events
+  private final Consumer<Circuit> onStructureChange = c -> layoutDirty = true;
+  private long lastClockTick = 0; // System.nanoTime() of the last clock edge
+  private long frameStart = 0;
+  private long frameEnd = 0;
+  private long ticksThisFrame = 0;
+  private double nanosPerTick = 1000; // Running estimate for ADAPTIVE
+  private long statsStart = System.nanoTime();
+  private long statsTicks = 0;
+  private long statsEvents = 0;
+  private long statsRunNanos = 0;
+  private long totalEvents = 0;
+  private long totalRunNanos = 0;
+
+  // Current frame and settle measurement
+  private SimulationEvents.Frame frameEvent;
+  private long frameTicks = 0;
+  private long frameEvents = 0;
+  private long frameRunNanos = 0;
+  private SimulationEvents.Settle settleEvent; // Null unless waiting to settle
+  private long settleStart = 0;
+  private long settleStartTick = 0;
+  private long settleStartEvents = 0;
 
-  public SimulationController(Circuit initialCircuit, Runnable repaintCallback) {
+  /**
+   * @param repaintCallback run on the EDT once per frame while running
+   * @param redraw          repaints the editor; called from the simulation
+   *                        thread when a command changes a stopped circuit
+   */
+  public SimulationController(Circuit initialCircuit, Runnable repaintCallback, Runnable redraw) {
     this.circuit = initialCircuit;
     this.repaintCallback = repaintCallback;
+    this.redraw = redraw;
+    configureEngine(initialCircuit);
+    if (initialCircuit != null) {
+      initialCircuit.addChangeListener(onStructureChange);
+      layout = new SignalSnapshot.Layout(initialCircuit);
+    }
+
+    // Push new settings into the running engine as soon as they are saved
+    SettingsManager.addSimulationConfigListener(config -> submit(() -> {
+      if (circuit != null)
+        circuit.getSimulator().setConfig(config);
+    }));
+
+    // 60Hz Loop (approx 16ms), repaint only: the work happens on the thread
+    this.timer = new Timer(16, e -> repaintCallback.run());
+
+    this.thread = new Thread(this::loop, "Simulation");
+    thread.setDaemon(true);
+    thread.start();
 
-    // 60Hz Loop (approx 16ms)
-    this.timer = new Timer(16, e -> tick());
+    new SimulationMetrics(this).register();
   }
 
   public void setCircuit(Circuit circuit) {
-    this.circuit = circuit;
-    Simulator.clear(); // Clear pending events for the old circuit
+    // Each circuit owns its engine, so the old circuit keeps its pending events
+    edit(() -> {
+      if (this.circuit != null) {
+        this.circuit.removeChangeListener(onStructureChange);
+        this.circuit.getSimulator().setProfiling(false);
+      }
+      this.circuit = circuit;
+      settleEvent = null; // Ticks aren't comparable across engines
+      configureEngine(circuit);
+      if (circuit != null)
+        circuit.addChangeListener(onStructureChange);
+      layoutDirty = true;
+    });
+  }
+
+  private void configureEngine(Circuit c) {
+    if (c == null)
+      return;
+    // Idle ticks are skipped so the per-frame budget is only spent on real work
+    c.getSimulator().setFastForward(true);
+    // With delays off, evaluate each gate once per settle in level order
+    c.getSimulator().setLevelized(true);
+    c.getSimulator().setConfig(SettingsManager.getSimulationConfig());
+    c.getSimulator().setProfiling(profiling);
+  }
+
+  // --- Commands ---
+
+  /** Runs an action on the simulation thread soon; returns immediately. */
+  public void submit(Runnable action) {
+    commands.add(action);
+    LockSupport.unpark(thread);
   }
 
+  /**
+   * Runs an edit on the simulation thread and waits for it, so the caller
+   * sees the circuit with the edit applied. Runs inline if already on
+   * that thread. Anything the edit throws, Errors included, is rethrown
+   * here rather than on the simulation thread.
+   */
+  public void edit(Runnable action) {
+    if (Thread.currentThread() == thread) {
+      action.run();
+      return;
+    }
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    submit(() -> {
+      try {
+        action.run();
+        done.complete(null);
+      } catch (Throwable t) {
+        done.completeExceptionally(t); // Never leave the caller waiting
+      }
+    });
+    try {
+      done.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException r)
+        throw r;
+      if (e.getCause() instanceof Error err)
+        throw err;
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** The signals as of the last completed frame. */
+  public SignalSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  // --- Controls ---
+
   public void start() {
+    running = true;
+    LockSupport.unpark(thread);
     timer.start();
   }
 
   public void stop() {
+    running = false;
     timer.stop();
   }
 
   public boolean isRunning() {
-    return timer.isRunning();
+    return running;
   }
 
   /**
    * Manual single-step (Process one clock cycle + resulting logic)
    */
   public void step() {
-    if (circuit != null) {
-      circuit.tick();
-      Simulator.run(1000); // Ensure logic ripples through
-      repaintCallback.run();
-    }
+    submit(() -> {
+      if (circuit != null) {
+        circuit.tick();
+        circuit.getSimulator().runUntilStable(1000); // Ensure logic ripples through
+      }
+    });
   }
 
   public void setClockSpeed(int hz) {
@@ -66,25 +264,335 @@ public class SimulationController {
     this.clockDelayMs = Math.max(1, ms);
   }
 
+  /** Fixed tick budget per frame; switches to the FIXED budget. */
   public void setLogicStepsPerFrame(int steps) {
     this.logicStepsPerFrame = steps;
+    this.budget = Budget.FIXED;
   }
 
-  private void tick() {
-    if (circuit == null)
+  public void setBudget(Budget budget) {
+    this.budget = budget;
+    LockSupport.unpark(thread);
+  }
+
+  public Budget getBudget() {
+    return budget;
+  }
+
+  /**
+   * Starts counting wire toggles for the heat map (from zero), or stops.
+   * Snapshots carry the counts while it is on.
+   */
+  public void setProfiling(boolean on) {
+    this.profiling = on;
+    submit(() -> {
+      if (circuit != null)
+        circuit.getSimulator().setProfiling(on);
+    });
+  }
+
+  public boolean isProfiling() {
+    return profiling;
+  }
+
+  /** Simulated ticks per wall-clock second, over the last half second. */
+  public double getTicksPerSecond() {
+    return ticksPerSecond;
+  }
+
+  public double getEventsPerSecond() {
+    return eventsPerSecond;
+  }
+
+  // --- Metrics ---
+
+  /** Events processed by this controller, across every circuit it has run. */
+  public long getEventsProcessed() {
+    return publishedEvents;
+  }
+
+  /** Wall-clock time spent inside Simulator.run(), in total. */
+  public long getRunNanos() {
+    return publishedRunNanos;
+  }
+
+  /** Share of the last half second spent inside Simulator.run(). */
+  public double getRunLoad() {
+    return runLoad;
+  }
+
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  /** Largest queue since the circuit was loaded or resetPeaks(). */
+  public int getPeakQueueDepth() {
+    return peakQueueDepth;
+  }
+
+  /** Simulated ticks in the last complete frame that did any work. */
+  public long getTicksLastFrame() {
+    return ticksLastFrame;
+  }
+
+  /**
+   * Wall-clock time from the last command that disturbed a running
+   * circuit (a Switch toggle or edit) until its logic was stable again.
+   */
+  public long getLastSettleNanos() {
+    return lastSettleNanos;
+  }
+
+  public long getLastSettleTicks() {
+    return lastSettleTicks;
+  }
+
+  public long getMaxSettleNanos() {
+    return maxSettleNanos;
+  }
+
+  public void resetPeaks() {
+    maxSettleNanos = 0;
+    submit(() -> {
+      if (circuit != null) {
+        circuit.getSimulator().resetPeakQueueDepth();
+        peakQueueDepth = circuit.getSimulator().getPeakQueueDepth();
+      }
+    });
+  }
+
+  // --- Simulation Thread ---
+
+  private void loop() {
+    while (true) {
+      try {
+        runFrame();
+      } catch (Throwable t) {
+        // Stop rather than die, so the editor and later commands still work
+        report("Simulation stopped", t);
+        running = false;
+        SwingUtilities.invokeLater(timer::stop);
+      }
+    }
+  }
+
+  private void runFrame() {
+    boolean changed = drainCommands();
+
+    if (changed)
+      startSettle();
+
+    long now = System.nanoTime();
+    if (now >= frameEnd) {
+      endFrame();
+      frameStart = now;
+      frameEnd = now + (budget == Budget.MAX_THROUGHPUT ? THROUGHPUT_FRAME_NANOS : FRAME_NANOS);
+      ticksThisFrame = 0;
+    }
+    if (running && circuit != null)
+      tickClocks();
+
+    boolean frameDone = true;
+    if (running && circuit != null)
+      frameDone = simulate();
+    checkSettled();
+    updateStats();
+
+    if (changed || running)
+      publish();
+    if (changed && !running)
+      redraw.run(); // No timer to pick the change up
+
+    // Sleep out the frame (or until started) unless a command arrives
+    if (!commands.isEmpty())
       return;
+    if (!running)
+      LockSupport.park(this);
+    else if (frameDone)
+      LockSupport.parkNanos(this, Math.min(frameEnd, nextClockTick()) - System.nanoTime());
+  }
 
-    // Process Logic Gates (Event Queue)
-    Simulator.run(logicStepsPerFrame);
+  // Returns true if any command ran
+  private boolean drainCommands() {
+    boolean any = false;
+    Runnable r;
+    while ((r = commands.poll()) != null) {
+      try {
+        r.run();
+      } catch (RuntimeException e) {
+        report("Simulation command failed", e); // Carry on with the next one
+      }
+      any = true;
+    }
+    if (layoutDirty && circuit != null) {
+      layout = new SignalSnapshot.Layout(circuit);
+      layoutDirty = false;
+    }
+    return any;
+  }
 
-    // Process Clocks
-    long now = System.currentTimeMillis();
-    if (now - lastClockTick >= clockDelayMs) {
+  // Failures here have no caller to go back to
+  private static void report(String what, Throwable t) {
+    System.err.println(what + ": " + t);
+  }
+
+  private void tickClocks() {
+    long now = System.nanoTime();
+    if (now >= nextClockTick()) {
       circuit.tick();
       lastClockTick = now;
     }
+  }
+
+  private long nextClockTick() {
+    return lastClockTick + clockDelayMs * 1_000_000L;
+  }
+
+  /**
+   * Spends this frame's budget in short slices, so commands never wait
+   * for a whole frame of a heavy circuit.
+   *
+   * @return true if the frame is done (budget spent or nothing to do),
+   *         false if it stopped early for a command
+   */
+  private boolean simulate() {
+    Budget mode = budget;
+    long deadline = (mode == Budget.ADAPTIVE) ? frameStart + TARGET_WORK_NANOS : frameEnd;
+    while (commands.isEmpty()) {
+      tickClocks(); // Frames can be far longer than a clock period
+      if (idle())
+        return true;
+      long now = System.nanoTime();
+      if (now >= deadline)
+        return true;
+
+      int slice;
+      if (mode == Budget.FIXED) {
+        if (ticksThisFrame >= logicStepsPerFrame)
+          return true;
+        slice = (int) Math.min(SLICE_TICKS, logicStepsPerFrame - ticksThisFrame);
+      } else {
+        // Size the slice from the measured cost of a tick
+        long nanos = Math.min(SLICE_NANOS, deadline - now);
+        slice = (int) Math.max(1, Math.min(MAX_SLICE_TICKS, nanos / nanosPerTick));
+      }
+      runSlice(slice);
+    }
+    return false;
+  }
+
+  private void runSlice(int slice) {
+    Simulator sim = circuit.getSimulator();
+    long tick = sim.getTick();
+    long events = sim.getEventsProcessed();
+    long runNanos = sim.getRunNanos();
+    sim.run(slice);
+    long elapsed = sim.getRunNanos() - runNanos;
 
-    // Update UI
-    repaintCallback.run();
+    long ticks = sim.getTick() - tick;
+    events = sim.getEventsProcessed() - events;
+    ticksThisFrame += slice;
+    statsTicks += ticks;
+    statsEvents += events;
+    statsRunNanos += elapsed;
+    frameTicks += ticks;
+    frameEvents += events;
+    frameRunNanos += elapsed;
+    totalEvents += events;
+    totalRunNanos += elapsed;
+    if (ticks > 0) // Moving average, so one slow slice doesn't stall the next frame
+      nanosPerTick = Math.max(1, 0.7 * nanosPerTick + 0.3 * ((double) elapsed / ticks));
+  }
+
+  private void updateStats() {
+    long now = System.nanoTime();
+    long window = now - statsStart;
+    if (window < STATS_WINDOW_NANOS)
+      return;
+    ticksPerSecond = statsTicks * 1e9 / window;
+    eventsPerSecond = statsEvents * 1e9 / window;
+    runLoad = (double) statsRunNanos / window;
+    statsStart = now;
+    statsTicks = 0;
+    statsEvents = 0;
+    statsRunNanos = 0;
+  }
+
+  // Closes the frame that is ending and opens the next one's event
+  private void endFrame() {
+    if (frameTicks > 0 || frameEvents > 0) {
+      ticksLastFrame = frameTicks;
+      if (frameEvent != null) {
+        frameEvent.end();
+        if (frameEvent.shouldCommit()) {
+          Simulator sim = circuit.getSimulator();
+          frameEvent.ticks = frameTicks;
+          frameEvent.events = frameEvents;
+          frameEvent.runTime = frameRunNanos;
+          frameEvent.queueDepth = sim.getQueueDepth();
+          frameEvent.peakQueueDepth = sim.getPeakQueueDepth();
+          frameEvent.commit();
+        }
+      }
+    }
+    frameTicks = 0;
+    frameEvents = 0;
+    frameRunNanos = 0;
+    frameEvent = null;
+    if (running && circuit != null) {
+      frameEvent = new SimulationEvents.Frame();
+      frameEvent.begin();
+    }
+  }
+
+  // Starts timing a settle if a command left the running circuit unstable
+  private void startSettle() {
+    if (settleEvent != null || !running || circuit == null || circuit.getSimulator().isStable())
+      return;
+    settleEvent = new SimulationEvents.Settle();
+    settleEvent.begin();
+    settleStart = System.nanoTime();
+    settleStartTick = circuit.getSimulator().getTick();
+    settleStartEvents = totalEvents;
+  }
+
+  private void checkSettled() {
+    if (settleEvent == null)
+      return;
+    if (!running || circuit == null) {
+      settleEvent = null; // Paused: the wait would measure the user, not the engine
+      return;
+    }
+    Simulator sim = circuit.getSimulator();
+    if (!sim.isStable())
+      return;
+    long nanos = System.nanoTime() - settleStart;
+    lastSettleNanos = nanos;
+    lastSettleTicks = sim.getTick() - settleStartTick;
+    maxSettleNanos = Math.max(maxSettleNanos, nanos);
+    settleEvent.end();
+    if (settleEvent.shouldCommit()) {
+      settleEvent.ticks = lastSettleTicks;
+      settleEvent.events = totalEvents - settleStartEvents;
+      settleEvent.commit();
+    }
+    settleEvent = null;
+  }
+
+  private boolean idle() {
+    return circuit == null || circuit.getSimulator().nextEventTick() < 0;
+  }
+
+  private void publish() {
+    if (circuit == null)
+      return;
+    if (layout == null)
+      layout = new SignalSnapshot.Layout(circuit);
+    Simulator sim = circuit.getSimulator();
+    snapshot = SignalSnapshot.capture(layout, sim.getTick(), sim.getProfile());
+    publishedEvents = totalEvents;
+    publishedRunNanos = totalRunNanos;
+    queueDepth = sim.getQueueDepth();
+    peakQueueDepth = sim.getPeakQueueDepth();
   }
 }
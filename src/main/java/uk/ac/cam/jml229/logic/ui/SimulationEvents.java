@@ -0,0 +1,63 @@
+package uk.ac.cam.jml229.logic.ui;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events emitted by the SimulationController's thread.
+ * Record with e.g. {@code java -XX:StartFlightRecording=filename=sim.jfr}
+ * and open the file in JDK Mission Control, or print it with
+ * {@code jfr print --events uk.ac.cam.jml229.logic.* sim.jfr}.
+ *
+ * An event costs next to nothing unless a recording has it enabled.
+ */
+final class SimulationEvents {
+
+  private SimulationEvents() {
+  }
+
+  /** One frame of the simulation loop while running. */
+  @Name("uk.ac.cam.jml229.logic.SimulationFrame")
+  @Label("Simulation Frame")
+  @Category({ "Logik", "Simulation" })
+  @Description("Simulated work done in one frame of the simulation thread")
+  @StackTrace(false)
+  static final class Frame extends Event {
+    @Label("Ticks")
+    long ticks;
+
+    @Label("Events")
+    long events;
+
+    @Label("Run Time")
+    @Description("Time spent inside Simulator.run() this frame")
+    @Timespan(Timespan.NANOSECONDS)
+    long runTime;
+
+    @Label("Queue Depth")
+    @Description("Events pending at the end of the frame")
+    int queueDepth;
+
+    @Label("Peak Queue Depth")
+    int peakQueueDepth;
+  }
+
+  /** From a command (Switch toggle, edit or step) until the logic is stable again. */
+  @Name("uk.ac.cam.jml229.logic.Settle")
+  @Label("Settle")
+  @Category({ "Logik", "Simulation" })
+  @Description("Time for the circuit to become stable after an input change")
+  @StackTrace(false)
+  static final class Settle extends Event {
+    @Label("Ticks")
+    long ticks;
+
+    @Label("Events")
+    long events;
+  }
+}
@@ -0,0 +1,104 @@
+package uk.ac.cam.jml229.logic.ui;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * JMX view of a SimulationController. Every getter reads values the
+ * simulation thread published at the end of its last frame, so JMX
+ * never touches the engine itself.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+
+  public static final String OBJECT_NAME = "uk.ac.cam.jml229.logic:type=Simulation";
+
+  private final SimulationController controller;
+
+  SimulationMetrics(SimulationController controller) {
+    this.controller = controller;
+  }
+
+  /**
+   * Registers with the platform MBean server, replacing any earlier
+   * controller's registration. Failure only costs the metrics.
+   */
+  void register() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (server.isRegistered(name))
+        server.unregisterMBean(name);
+      server.registerMBean(this, name);
+    } catch (JMException | SecurityException e) {
+      System.err.println("Simulation metrics unavailable over JMX: " + e);
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return controller.isRunning();
+  }
+
+  @Override
+  public long getEventsProcessed() {
+    return controller.getEventsProcessed();
+  }
+
+  @Override
+  public double getEventsPerSecond() {
+    return controller.getEventsPerSecond();
+  }
+
+  @Override
+  public double getTicksPerSecond() {
+    return controller.getTicksPerSecond();
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return controller.getQueueDepth();
+  }
+
+  @Override
+  public int getPeakQueueDepth() {
+    return controller.getPeakQueueDepth();
+  }
+
+  @Override
+  public long getTicksLastFrame() {
+    return controller.getTicksLastFrame();
+  }
+
+  @Override
+  public double getRunTimeMillis() {
+    return controller.getRunNanos() / 1e6;
+  }
+
+  @Override
+  public double getRunLoad() {
+    return controller.getRunLoad();
+  }
+
+  @Override
+  public double getLastSettleMillis() {
+    return controller.getLastSettleNanos() / 1e6;
+  }
+
+  @Override
+  public long getLastSettleTicks() {
+    return controller.getLastSettleTicks();
+  }
+
+  @Override
+  public double getMaxSettleMillis() {
+    return controller.getMaxSettleNanos() / 1e6;
+  }
+
+  @Override
+  public void resetPeaks() {
+    controller.resetPeaks();
+  }
+}
@@ -0,0 +1,37 @@
+package uk.ac.cam.jml229.logic.ui;
+
+/**
+ * Live engine counters, published over JMX as
+ * {@code uk.ac.cam.jml229.logic:type=Simulation} for JConsole or
+ * VisualVM. Times are in milliseconds.
+ */
+public interface SimulationMetricsMBean {
+
+  boolean isRunning();
+
+  long getEventsProcessed();
+
+  double getEventsPerSecond();
+
+  double getTicksPerSecond();
+
+  int getQueueDepth();
+
+  int getPeakQueueDepth();
+
+  long getTicksLastFrame();
+
+  double getRunTimeMillis();
+
+  /** Share of wall-clock time spent in Simulator.run(), over the last half second. */
+  double getRunLoad();
+
+  double getLastSettleMillis();
+
+  long getLastSettleTicks();
+
+  double getMaxSettleMillis();
+
+  /** Clears the peak queue depth and the maximum settle time. */
+  void resetPeaks();
+}
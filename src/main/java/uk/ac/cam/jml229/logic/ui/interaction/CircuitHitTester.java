@@ -18,6 +18,15 @@ public class CircuitHitTester {
   private Circuit circuit;
   private final CircuitRenderer renderer;
 
+  // Stroked outline of every wire segment, rebuilt only when the circuit's
+  // version moves on, so hovering doesn't re-stroke every wire per event
+  private record WireHit(WireSegment segment, Shape outline, Rectangle bounds) {
+  }
+
+  private final List<WireHit> wireHits = new ArrayList<>();
+  private Circuit wireHitsCircuit = null;
+  private long wireHitsVersion = -1;
+
   public CircuitHitTester(Circuit circuit, CircuitRenderer renderer) {
     this.circuit = circuit;
     this.renderer = renderer;
@@ -61,7 +70,21 @@ public class CircuitHitTester {
   }
 
   public WireSegment findWireAt(Point p) {
+    if (wireHitsCircuit != circuit || wireHitsVersion != circuit.getVersion())
+      rebuildWireHits();
+    for (WireHit hit : wireHits) {
+      if (hit.bounds().contains(p) && hit.outline().contains(p))
+        return hit.segment();
+    }
+    return null;
+  }
+
+  private void rebuildWireHits() {
     int hitThreshold = 5;
+    // Read the version first: an edit during the rebuild forces another one
+    wireHitsVersion = circuit.getVersion();
+    wireHitsCircuit = circuit;
+    wireHits.clear();
     for (Wire w : circuit.getWires()) {
       Component src = w.getSource();
       if (src == null)
@@ -80,12 +103,9 @@ public class CircuitHitTester {
         Point p2 = renderer.getPinLocation(pc.component, true, pc.inputIndex);
         Shape path = renderer.createWireShape(p1, p2, pc.waypoints);
         Shape strokedShape = new BasicStroke(hitThreshold).createStrokedShape(path);
-
-        if (strokedShape.contains(p))
-          return new WireSegment(w, pc);
+        wireHits.add(new WireHit(new WireSegment(w, pc), strokedShape, strokedShape.getBounds()));
       }
     }
-    return null;
   }
 
   public Component findComponentAt(Point p) {
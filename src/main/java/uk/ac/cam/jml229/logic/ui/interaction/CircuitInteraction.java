@@ -11,6 +11,7 @@ import uk.ac.cam.jml229.logic.components.*;
 import uk.ac.cam.jml229.logic.components.Component;
 import uk.ac.cam.jml229.logic.components.misc.TextLabel;
 import uk.ac.cam.jml229.logic.components.gates.LogicGate;
+import uk.ac.cam.jml229.logic.components.seq.Clock;
 import uk.ac.cam.jml229.logic.core.Circuit;
 import uk.ac.cam.jml229.logic.core.Wire;
 import uk.ac.cam.jml229.logic.ui.panels.CircuitPanel;
@@ -39,6 +40,10 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
   // --- Callback for Timing ---
   private Consumer<List<Component>> onOpenTiming;
 
+  // Applies changes to the live circuit (on the simulation thread once
+  // GuiMain wires it up) and returns when they are done
+  private Consumer<Runnable> editor = Runnable::run;
+
   // --- SHARED VIEW STATE ---
   private final List<Component> selectedComponents = new ArrayList<>();
   private final List<WaypointRef> selectedWaypoints = new ArrayList<>();
@@ -73,6 +78,18 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
     this.onOpenTiming = callback;
   }
 
+  public void setEditor(Consumer<Runnable> editor) {
+    this.editor = editor;
+  }
+
+  /**
+   * Runs a change to the live circuit, or anything else the simulation
+   * must not see half done. Blocks until it has been applied.
+   */
+  public void edit(Runnable change) {
+    editor.accept(change);
+  }
+
   public void setState(InteractionState newState) {
     if (currentState != null)
       currentState.onExit();
@@ -174,7 +191,8 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
       organiseItem.addActionListener(ev -> {
         saveHistory();
         // Pass a copy so it doesn't get weird if selection clears during op
-        AutoLayout.organiseSelection(circuit, new ArrayList<>(selectedComponents));
+        List<Component> selection = new ArrayList<>(selectedComponents);
+        edit(() -> AutoLayout.organiseSelection(circuit, selection));
         panel.repaint();
       });
       menu.add(organiseItem);
@@ -197,7 +215,7 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
           try {
             int n = Integer.parseInt(input);
             saveHistory();
-            gate.resizeInputs(n);
+            edit(() -> circuit.resizeInputs(gate, n));
             panel.repaint();
           } catch (NumberFormatException ex) {}
         }
@@ -220,13 +238,38 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
             return;
           }
         }
-        for (Component c : selectedComponents) {
-          c.setCustomDelay(val);
-        }
+        Integer delay = val;
+        edit(() -> {
+          for (Component c : selectedComponents)
+            c.setCustomDelay(delay);
+        });
       }
     });
     menu.add(delayItem);
 
+    if (selectedComponents.size() == 1 && selectedComponents.get(0) instanceof Clock) {
+      Clock clock = (Clock) selectedComponents.get(0);
+      JMenuItem periodItem = new JMenuItem("Set Clock Period...");
+      periodItem.addActionListener(ev -> {
+        String current = clock.isTimed() ? clock.getPeriod() + "," + clock.getPhase() : "0";
+        String input = JOptionPane.showInputDialog(panel,
+            "Period in ticks, optionally \",phase\" (0 = follow the clock speed setting):", current);
+        if (input != null) {
+          try {
+            String[] parts = input.split(",");
+            long period = Long.parseLong(parts[0].trim());
+            long phase = (parts.length > 1) ? Long.parseLong(parts[1].trim()) : 0;
+            saveHistory();
+            edit(() -> clock.setTiming(period, phase));
+          } catch (IllegalArgumentException ex) {
+            // Covers NumberFormatException too
+            JOptionPane.showMessageDialog(panel, ex.getMessage(), "Invalid Period", JOptionPane.WARNING_MESSAGE);
+          }
+        }
+      });
+      menu.add(periodItem);
+    }
+
     menu.addSeparator();
     JMenuItem renameItem = new JMenuItem("Rename");
     renameItem.addActionListener(ev -> {
@@ -333,8 +376,10 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
       ((PlacingState) currentState).rotate();
     } else if (!selectedComponents.isEmpty()) {
       saveHistory();
-      for (Component c : selectedComponents)
-        c.rotate();
+      edit(() -> {
+        for (Component c : selectedComponents)
+          circuit.rotateComponent(c);
+      });
       panel.repaint();
     }
   }
@@ -344,17 +389,22 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
       return;
     saveHistory();
 
-    for (WaypointRef wp : selectedWaypoints)
-      wp.connection().waypoints.remove(wp.point());
+    List<WaypointRef> points = new ArrayList<>(selectedWaypoints);
     selectedWaypoints.clear();
 
-    if (selectedWireSegment != null) {
-      circuit.removeConnection(selectedWireSegment.connection().component, selectedWireSegment.connection().inputIndex);
-      selectedWireSegment = null;
-    }
-
-    for (Component c : new ArrayList<>(selectedComponents))
-      circuit.removeComponent(c);
+    WireSegment wire = selectedWireSegment;
+    List<Component> doomed = new ArrayList<>(selectedComponents);
+    edit(() -> circuit.transaction(() -> {
+      for (WaypointRef wp : points) {
+        wp.connection().waypoints.remove(wp.point());
+        circuit.waypointsChanged(wp.connection());
+      }
+      if (wire != null)
+        circuit.removeConnection(wire.connection().component, wire.connection().inputIndex);
+      for (Component c : doomed)
+        circuit.removeComponent(c);
+    }));
+    selectedWireSegment = null;
     selectedComponents.clear();
     panel.repaint();
   }
@@ -362,10 +412,17 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
   public void copy() {
     if (selectedComponents.isEmpty())
       return;
-    Circuit temp = new Circuit();
-    for (Component c : selectedComponents)
-      temp.addComponent(c);
-    clipboardString = StorageManager.saveToString(temp, null);
+    edit(() -> {
+      Circuit temp = new Circuit();
+      for (Component c : selectedComponents)
+        temp.addComponent(c);
+      clipboardString = StorageManager.saveToString(temp, null);
+
+      // The temp circuit only exists for serialisation; hand the live
+      // components back to the real circuit's engine.
+      for (Component c : selectedComponents)
+        c.setSimulator(circuit.getSimulator());
+    });
   }
 
   public void cut() {
@@ -390,9 +447,16 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
       clearSelection();
       for (Component c : pasted.getComponents()) {
         c.setPosition(c.getX() + 20, c.getY() + 20);
-        circuit.addComponent(c);
         selectedComponents.add(c);
       }
+      edit(() -> {
+        circuit.transaction(() -> {
+          for (Component c : pasted.getComponents())
+            circuit.addComponent(c);
+        });
+        // Keep any signals still propagating inside the pasted block
+        circuit.getSimulator().transferFrom(pasted.getSimulator());
+      });
       panel.repaint();
     } catch (Exception e) {
       e.printStackTrace();
@@ -410,8 +474,24 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
     if (name.length() > 5)
       name = name.substring(0, 5);
 
+    // Only top-level clocks run in simulation time; ChipDefinition drops the period
+    List<String> timed = new ArrayList<>();
+    for (Component c : selectedComponents) {
+      if (c instanceof Clock k && k.isTimed())
+        timed.add(k.getName());
+    }
+    if (!timed.isEmpty()) {
+      int choice = JOptionPane.showConfirmDialog(panel,
+          "Clocks inside a component follow the clock speed setting, so the period of "
+              + String.join(", ", timed) + " will be dropped. Continue?",
+          "Clock Period", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+      if (choice != JOptionPane.OK_OPTION)
+        return;
+    }
+
     // Create a mini-circuit from selection
     Circuit innerCircuit = new Circuit();
+    innerCircuit.beginTransaction();
     Map<Component, Component> oldToNew = new HashMap<>();
 
     // Clone Components
@@ -450,6 +530,8 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
       }
     }
 
+    innerCircuit.commitTransaction();
+
     // Create the CustomComponent wrapper
     CustomComponent newTool = new CustomComponent(name, innerCircuit);
 
@@ -473,7 +555,8 @@ public class CircuitInteraction extends MouseAdapter implements KeyListener {
   }
 
   public void saveHistory() {
-    history.pushState(circuit);
+    // Serialised between simulation steps so the saved signals agree
+    edit(() -> history.pushState(circuit));
   }
 
   public void resetHistory() {
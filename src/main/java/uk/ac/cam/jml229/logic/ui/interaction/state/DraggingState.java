@@ -46,7 +46,12 @@ public class DraggingState implements InteractionState {
     Point current = ctx.getWorldPoint(e);
     int dx = current.x - startPt.x;
     int dy = current.y - startPt.y;
+    ctx.edit(() -> applyDrag(dx, dy));
 
+    ctx.getPanel().repaint();
+  }
+
+  private void applyDrag(int dx, int dy) {
     // Move Components
     int gridDx = dx;
     int gridDy = dy;
@@ -56,7 +61,7 @@ public class DraggingState implements InteractionState {
     }
     for (Map.Entry<Component, Point> entry : initialCompPositions.entrySet()) {
       Point initial = entry.getValue();
-      entry.getKey().setPosition(initial.x + gridDx, initial.y + gridDy);
+      ctx.getCircuit().moveComponent(entry.getKey(), initial.x + gridDx, initial.y + gridDy);
     }
 
     // Move Waypoints
@@ -117,16 +122,12 @@ public class DraggingState implements InteractionState {
             pt.y = next.y;
         }
       }
+      ctx.getCircuit().waypointsChanged(wp.connection());
     }
-
-    ctx.getPanel().repaint();
   }
 
   private Wire getWireForConnection(Wire.PortConnection pc) {
-    for (Wire w : ctx.getCircuit().getWires())
-      if (w.getDestinations().contains(pc))
-        return w;
-    return null;
+    return ctx.getCircuit().getDriver(pc.component, pc.inputIndex);
   }
 
   @Override
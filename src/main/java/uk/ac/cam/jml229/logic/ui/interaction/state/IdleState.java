@@ -79,7 +79,10 @@ public class IdleState implements InteractionState {
       if (ctx.getSelectedWire() != null && ctx.getSelectedWire().wire() == wireSeg.wire()) {
         ctx.saveHistory();
         int idx = ctx.getHitTester().getWaypointInsertionIndex(wireSeg, worldPt);
-        wireSeg.connection().waypoints.add(idx, worldPt);
+        ctx.edit(() -> {
+          wireSeg.connection().waypoints.add(idx, worldPt);
+          ctx.getCircuit().waypointsChanged(wireSeg.connection());
+        });
         WaypointRef newWp = new WaypointRef(wireSeg.connection(), worldPt);
         ctx.clearSelection();
         ctx.getSelectedWaypoints().add(newWp);
@@ -145,7 +148,8 @@ public class IdleState implements InteractionState {
 
     if (c != null) {
       if (c instanceof Switch) {
-        ((Switch) c).toggle(!((Switch) c).getState());
+        Switch s = (Switch) c;
+        ctx.edit(() -> s.toggle(!s.getState()));
         ctx.getPanel().repaint();
       } else if (e.getClickCount() == 2) {
         renameComponent(c);
@@ -193,9 +197,13 @@ public class IdleState implements InteractionState {
 
       if (isArrow) {
         ctx.saveHistory();
-        for (Component c : ctx.getSelectedComponents()) {
-          c.setPosition(c.getX() + dx, c.getY() + dy);
-        }
+        int moveX = dx;
+        int moveY = dy;
+        ctx.edit(() -> {
+          for (Component c : ctx.getSelectedComponents()) {
+            ctx.getCircuit().moveComponent(c, c.getX() + moveX, c.getY() + moveY);
+          }
+        });
         ctx.getPanel().repaint();
       }
     }
@@ -238,7 +246,7 @@ public class IdleState implements InteractionState {
             int n = Integer.parseInt(input);
             // Save history BEFORE changing state so Undo works
             ctx.saveHistory();
-            gate.resizeInputs(n);
+            ctx.edit(() -> ctx.getCircuit().resizeInputs(gate, n));
             ctx.getPanel().repaint();
           } catch (NumberFormatException ex) {
             // Ignore invalid numbers
@@ -59,7 +59,8 @@ public class PlacingState implements InteractionState {
       return; // Don't place if we haven't even entered the screen
 
     ctx.saveHistory();
-    ctx.getCircuit().addComponent(ghost);
+    Component placed = ghost;
+    ctx.edit(() -> ctx.getCircuit().addComponent(placed));
 
     // Prevent next click from triggering underlying components (like switches)
     ctx.setPreventNextClick(true);
@@ -95,7 +95,8 @@ public class WiringState implements InteractionState {
       ctx.saveHistory();
       Pin source = start.isInput() ? endPin : start;
       Pin dest = start.isInput() ? start : endPin;
-      ctx.getCircuit().addConnection(source.component(), source.index(), dest.component(), dest.index());
+      ctx.edit(() -> ctx.getCircuit().addConnection(source.component(), source.index(), dest.component(),
+          dest.index()));
       return true;
     }
     return false;
@@ -122,18 +123,27 @@ public class WiringState implements InteractionState {
 
     // Insert a waypoint at the T-junction point
     int idx = ctx.getHitTester().getWaypointInsertionIndex(seg, pt);
-    seg.connection().waypoints.add(idx, new Point(pt));
+    ctx.edit(() -> {
+      seg.connection().waypoints.add(idx, new Point(pt));
+      ctx.getCircuit().waypointsChanged(seg.connection());
+    });
 
     // Create the new connection
-    boolean ok = ctx.getCircuit().addConnection(source, srcIdx, ctx.connectionStartPin.component(),
-        ctx.connectionStartPin.index());
+    Pin end = ctx.connectionStartPin;
+    int from = srcIdx;
+    boolean[] added = new boolean[1];
+    ctx.edit(() -> added[0] = ctx.getCircuit().addConnection(source, from, end.component(), end.index()));
+    boolean ok = added[0];
 
     // If successful, copy the path from source up to the T-junction
     if (ok) {
       for (Wire.PortConnection pc : w.getDestinations()) {
         if (pc.component == ctx.connectionStartPin.component() && pc.inputIndex == ctx.connectionStartPin.index()) {
-          for (int k = 0; k <= idx; k++)
-            pc.waypoints.add(new Point(seg.connection().waypoints.get(k)));
+          ctx.edit(() -> {
+            for (int k = 0; k <= idx; k++)
+              pc.waypoints.add(new Point(seg.connection().waypoints.get(k)));
+            ctx.getCircuit().waypointsChanged(pc);
+          });
           break;
         }
       }
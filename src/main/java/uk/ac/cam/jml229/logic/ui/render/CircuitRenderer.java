@@ -4,17 +4,24 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.*;
 import java.util.List;
+import java.util.function.Supplier;
 
 import uk.ac.cam.jml229.logic.components.Component;
 import uk.ac.cam.jml229.logic.components.io.OutputProbe;
 import uk.ac.cam.jml229.logic.core.Wire;
 import uk.ac.cam.jml229.logic.app.Theme;
+import uk.ac.cam.jml229.logic.ui.SignalSnapshot;
 
 public class CircuitRenderer {
 
   private final ComponentPainter componentPainter = new ComponentPainter();
   private final WirePainter wirePainter = new WirePainter();
 
+  // Where signal values come from; one snapshot is used per paint
+  private Supplier<SignalSnapshot> signalSource = () -> SignalSnapshot.LIVE;
+  private SignalSnapshot signals = SignalSnapshot.LIVE;
+  private boolean heatMap = false;
+
   // Public Constants
   public static final int PIN_SIZE = 8;
   public static final int HANDLE_SIZE = 6;
@@ -31,6 +38,22 @@ public class CircuitRenderer {
   public record WireSegment(Wire wire, Wire.PortConnection connection) {
   }
 
+  public void setSignalSource(Supplier<SignalSnapshot> source) {
+    this.signalSource = source;
+  }
+
+  /**
+   * Colours wires by how often they toggle instead of by value. Needs the
+   * simulation to be profiling; without counts wires are drawn as usual.
+   */
+  public void setHeatMap(boolean heatMap) {
+    this.heatMap = heatMap;
+  }
+
+  public boolean isHeatMap() {
+    return heatMap;
+  }
+
   public void render(Graphics2D g2,
       List<Component> components,
       List<Wire> wires,
@@ -46,6 +69,8 @@ public class CircuitRenderer {
       Component ghostComponent,
       Rectangle viewBounds) {
 
+    signals = signalSource.get();
+    componentPainter.setSignals(signals);
     setupGraphics(g2);
     drawGrid(g2, viewBounds);
     drawWires(g2, wires, selectedWire, hoveredWire, selectedWaypoint, hoveredWaypoint);
@@ -102,10 +127,13 @@ public class CircuitRenderer {
       WireSegment selectedWire, WireSegment hoveredWire,
       WaypointRef selectedWaypoint, WaypointRef hoveredWaypoint) {
     g2.setStroke(new BasicStroke(3, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+    boolean heat = heatMap && signals.hasHeat();
     for (Wire w : wires) {
       Component source = w.getSource();
       if (source == null)
         continue;
+      Color color = heat ? WirePainter.heatColor(signals.getHeat(w))
+          : (signals.getSignal(w) ? Theme.WIRE_ON : Theme.WIRE_OFF);
       int sourceIndex = 0;
       for (int i = 0; i < source.getOutputCount(); i++) {
         if (source.getOutputWire(i) == w) {
@@ -123,7 +151,7 @@ public class CircuitRenderer {
         boolean isWireHovered = (hoveredWire != null && hoveredWire.wire() == w && hoveredWire.connection() == pc);
 
         Shape path = wirePainter.createWireShape(p1, p2, pc.waypoints);
-        wirePainter.drawWire(g2, path, w.getSignal(), isWireSelected, isWireHovered);
+        wirePainter.drawWire(g2, path, color, isWireSelected, isWireHovered);
 
         if (isWireSelected || isWireHovered || !pc.waypoints.isEmpty()) {
           for (Point pt : pc.waypoints) {
@@ -10,11 +10,19 @@ import uk.ac.cam.jml229.logic.components.gates.*;
 import uk.ac.cam.jml229.logic.components.io.*;
 import uk.ac.cam.jml229.logic.components.seq.*;
 import uk.ac.cam.jml229.logic.components.misc.*;
+import uk.ac.cam.jml229.logic.ui.SignalSnapshot;
 
 public class ComponentPainter {
 
   private static final int PIN_SIZE = 8;
 
+  private SignalSnapshot signals = SignalSnapshot.LIVE;
+
+  /** Values for the next components drawn; set by CircuitRenderer per paint. */
+  public void setSignals(SignalSnapshot signals) {
+    this.signals = signals;
+  }
+
   public void drawComponent(Graphics2D g2, Component c, boolean sel, boolean drawLabel) {
     AffineTransform oldTx = g2.getTransform();
     int x = c.getX();
@@ -274,7 +282,7 @@ public class ComponentPainter {
     g2.setStroke(new BasicStroke(1));
     g2.drawRoundRect(x, sy, w, h, arc, arc);
 
-    boolean on = s.getState();
+    boolean on = signals.getState(s);
     int thumbSize = 22;
     int thumbY = sy - (thumbSize - h) / 2;
     int thumbX = on ? (x + w - thumbSize) : x;
@@ -306,7 +314,7 @@ public class ComponentPainter {
     g2.setStroke(new BasicStroke(2));
     g2.drawRoundRect(x, y + 5, 40, 30, 5, 5);
 
-    boolean on = c.getState();
+    boolean on = signals.getState(c);
     g2.setColor(on ? Theme.SWITCH_ON : new Color(100, 100, 100)); // Uses Switch/Wire color
 
     g2.setStroke(new BasicStroke(2));
@@ -328,7 +336,7 @@ public class ComponentPainter {
       g2.setStroke(new BasicStroke(5));
       g2.drawOval(x, y, 40, 40);
     }
-    boolean on = p.getState();
+    boolean on = signals.getState(p);
     Color core = on ? Theme.LED_ON : Theme.LED_OFF; // Theme dependent
 
     if (on) {
@@ -12,6 +12,10 @@ public class WirePainter {
   public static final int HANDLE_SIZE = 6;
   public static final int HANDLE_HIT_SIZE = 10;
 
+  private static final Color HEAT_WARM = new Color(70, 130, 220);
+  private static final Color HEAT_MID = new Color(240, 190, 40);
+  private static final Color HEAT_HOT = new Color(230, 40, 30);
+
   public Shape createWireShape(Point start, Point end, List<Point> waypoints) {
     GeneralPath path = new GeneralPath();
     path.moveTo(start.x, start.y);
@@ -32,16 +36,36 @@ public class WirePainter {
   }
 
   public void drawWire(Graphics2D g2, Shape path, boolean isSignalOn, boolean isSelected, boolean isHovered) {
+    drawWire(g2, path, isSignalOn ? Theme.WIRE_ON : Theme.WIRE_OFF, isSelected, isHovered);
+  }
+
+  public void drawWire(Graphics2D g2, Shape path, Color color, boolean isSelected, boolean isHovered) {
     if (isSelected || isHovered) {
       g2.setColor(isSelected ? Theme.SELECTION_BORDER : Theme.HOVER_COLOR);
       g2.setStroke(new BasicStroke(6));
       g2.draw(path);
       g2.setStroke(new BasicStroke(3));
     }
-    g2.setColor(isSignalOn ? Theme.WIRE_ON : Theme.WIRE_OFF);
+    g2.setColor(color);
     g2.draw(path);
   }
 
+  /** Heat map colour: the idle wire colour for 0, through amber, to red for 1. */
+  public static Color heatColor(float heat) {
+    if (heat <= 0)
+      return Theme.WIRE_OFF;
+    if (heat < 0.5f)
+      return blend(HEAT_WARM, HEAT_MID, heat * 2);
+    return blend(HEAT_MID, HEAT_HOT, (heat - 0.5f) * 2);
+  }
+
+  private static Color blend(Color a, Color b, float t) {
+    return new Color(
+        Math.round(a.getRed() + (b.getRed() - a.getRed()) * t),
+        Math.round(a.getGreen() + (b.getGreen() - a.getGreen()) * t),
+        Math.round(a.getBlue() + (b.getBlue() - a.getBlue()) * t));
+  }
+
   public void drawHandle(Graphics2D g2, Point pt, boolean isSelected, boolean isHovered) {
     if (isSelected || isHovered) {
       g2.setColor(isSelected ? Theme.SELECTION_BORDER : Theme.HOVER_COLOR);
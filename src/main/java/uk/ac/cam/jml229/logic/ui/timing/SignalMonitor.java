@@ -1,6 +1,7 @@
 package uk.ac.cam.jml229.logic.ui.timing;
 
 import uk.ac.cam.jml229.logic.core.Wire;
+import uk.ac.cam.jml229.logic.ui.SignalSnapshot;
 import java.awt.Color;
 
 public class SignalMonitor {
@@ -17,8 +18,8 @@ public class SignalMonitor {
     this.history = new boolean[bufferSize];
   }
 
-  public void tick() {
-    history[head] = wire.getSignal();
+  public void tick(SignalSnapshot signals) {
+    history[head] = signals.getSignal(wire);
     head = (head + 1) % history.length;
   }
 
@@ -37,7 +38,8 @@ public class SignalMonitor {
     return color;
   }
 
+  /** Latest recorded value. */
   public boolean getCurrentState() {
-    return wire.getSignal();
+    return getStateAt(-1);
   }
 }
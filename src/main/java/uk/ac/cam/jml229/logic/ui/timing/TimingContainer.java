@@ -6,6 +6,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 
 import uk.ac.cam.jml229.logic.app.Theme;
+import uk.ac.cam.jml229.logic.ui.SignalSnapshot;
 import uk.ac.cam.jml229.logic.ui.render.ThemedScrollBarUI;
 
 public class TimingContainer extends JPanel {
@@ -76,9 +77,9 @@ public class TimingContainer extends JPanel {
     SwingUtilities.invokeLater(this::scrollToPresent);
   }
 
-  public void tick() {
+  public void tick(SignalSnapshot signals) {
     if (isShowing())
-      timingPanel.tick();
+      timingPanel.tick(signals);
   }
 
   public void clear() {
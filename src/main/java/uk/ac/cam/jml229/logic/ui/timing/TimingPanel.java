@@ -5,6 +5,7 @@ import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
 import uk.ac.cam.jml229.logic.app.Theme;
+import uk.ac.cam.jml229.logic.ui.SignalSnapshot;
 
 public class TimingPanel extends JPanel implements Scrollable {
 
@@ -59,11 +60,11 @@ public class TimingPanel extends JPanel implements Scrollable {
     repaint();
   }
 
-  public void tick() {
+  public void tick(SignalSnapshot signals) {
     if (paused)
       return;
     for (SignalMonitor m : monitors)
-      m.tick();
+      m.tick(signals);
 
     Rectangle visible = getVisibleRect();
     int width = getWidth();
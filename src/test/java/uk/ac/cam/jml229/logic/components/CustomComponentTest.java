@@ -0,0 +1,134 @@
+package uk.ac.cam.jml229.logic.components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.cam.jml229.logic.components.gates.NotGate;
+import uk.ac.cam.jml229.logic.components.io.OutputProbe;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.components.seq.Clock;
+import uk.ac.cam.jml229.logic.core.Circuit;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
+import uk.ac.cam.jml229.logic.core.Simulator;
+import uk.ac.cam.jml229.logic.core.Wire;
+import uk.ac.cam.jml229.logic.core.netlist.Netlist;
+import uk.ac.cam.jml229.logic.core.netlist.NetlistSimulator;
+import uk.ac.cam.jml229.logic.io.StorageManager;
+
+class CustomComponentTest {
+
+  private static final int GATE_DELAY = 3;
+  private static final SimulationConfig DELAYS_ON = new SimulationConfig(true, GATE_DELAY);
+
+  @Test
+  void internalGatesKeepTheirOwnDelays() {
+    // Zero-delay pins, so only the two internal gates take time
+    Harness h = new Harness(0);
+    assertEquals(2 * GATE_DELAY, h.ticksUntilOutputFlips());
+    assertEquals(2 * GATE_DELAY, h.ticksUntilOutputFlips());
+  }
+
+  @Test
+  void timingMatchesCompiledNetlist() {
+    // Default delays: the chip's input pins and its probe take a gate delay each
+    Harness h = new Harness(null);
+    NetlistSimulator compiled = new NetlistSimulator(Netlist.compile(h.circuit), DELAYS_ON);
+    long expected = ticksUntilFlips(compiled, h.input, h.output);
+
+    assertEquals(4 * GATE_DELAY, expected);
+    assertEquals(expected, h.ticksUntilOutputFlips());
+  }
+
+  @Test
+  void clocksInsideAChipLoseTheirPeriod() {
+    Circuit template = new Circuit();
+    Clock clock = new Clock("CLK");
+    clock.setTiming(10, 2);
+    OutputProbe out = new OutputProbe("out");
+    template.addComponent(clock);
+    template.addComponent(out);
+    template.addConnection(clock, out, 0);
+
+    CustomComponent chip = new CustomComponent("OSC", template);
+    Circuit circuit = new Circuit();
+    circuit.addComponent(chip);
+
+    assertTrue(clock.isTimed()); // The template itself is left alone
+    for (Component c : chip.getInnerCircuit().getComponents()) {
+      if (c instanceof Clock k)
+        assertFalse(k.isTimed());
+    }
+    String saved = StorageManager.saveToString(circuit, List.of(chip));
+    assertFalse(saved.contains("PERIOD:"), saved);
+  }
+
+  // Switch -> chip (in -> NOT -> NOT -> out) -> OutputProbe
+  private static final class Harness {
+    final Circuit circuit = new Circuit();
+    final Switch input = new Switch("IN");
+    final Wire output;
+
+    Harness(Integer pinDelay) {
+      Circuit template = new Circuit();
+      Switch in = new Switch("in");
+      NotGate first = new NotGate("NOT");
+      NotGate second = new NotGate("NOT");
+      OutputProbe out = new OutputProbe("out");
+      out.setCustomDelay(pinDelay);
+      template.addComponent(in);
+      template.addComponent(first);
+      template.addComponent(second);
+      template.addComponent(out);
+      template.addConnection(in, first, 0);
+      template.addConnection(first, second, 0);
+      template.addConnection(second, out, 0);
+
+      CustomComponent chip = new CustomComponent("BUF", template);
+      chip.setCustomDelay(pinDelay);
+      OutputProbe probe = new OutputProbe("Q");
+
+      circuit.getSimulator().setConfig(DELAYS_ON);
+      circuit.addComponent(input);
+      circuit.addComponent(chip);
+      circuit.addComponent(probe);
+      circuit.addConnection(input, chip, 0);
+      circuit.addConnection(chip, probe, 0);
+      circuit.getSimulator().runUntilStable(1000);
+      output = chip.getOutputWire(0);
+    }
+
+    long ticksUntilOutputFlips() {
+      Simulator sim = circuit.getSimulator();
+      boolean before = output.getSignal();
+      long start = sim.getTick();
+      input.toggle(!input.getState());
+      for (int i = 0; i < 100; i++) {
+        sim.run(1);
+        if (output.getSignal() != before) {
+          long ticks = sim.getTick() - 1 - start; // run(1) stepped past the flip
+          sim.runUntilStable(1000);
+          return ticks;
+        }
+      }
+      return fail("chip output never changed");
+    }
+  }
+
+  private static long ticksUntilFlips(NetlistSimulator sim, Switch input, Wire output) {
+    boolean before = sim.getSignal(output);
+    long start = sim.getTick();
+    sim.setSwitch(input, !input.getState());
+    for (int i = 0; i < 100; i++) {
+      sim.runUntilStable(1);
+      if (sim.getSignal(output) != before)
+        return sim.getTick() - 1 - start;
+    }
+    return fail("compiled chip output never changed");
+  }
+}
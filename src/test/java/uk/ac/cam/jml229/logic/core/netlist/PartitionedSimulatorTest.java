@@ -0,0 +1,129 @@
+package uk.ac.cam.jml229.logic.core.netlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.gates.AndGate;
+import uk.ac.cam.jml229.logic.components.gates.OrGate;
+import uk.ac.cam.jml229.logic.components.gates.XorGate;
+import uk.ac.cam.jml229.logic.components.io.OutputProbe;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.core.Circuit;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
+import uk.ac.cam.jml229.logic.core.Simulator.RunResult;
+
+class PartitionedSimulatorTest {
+
+  private static final int BITS = 2000;
+  private static final int VECTORS = 6;
+  private static final long LIMIT = 1_000_000;
+
+  @Test
+  void matchesNetlistSimulatorWithDelays() {
+    compareOnAdder(new SimulationConfig(true, 2));
+  }
+
+  @Test
+  void matchesNetlistSimulatorWithoutDelays() {
+    compareOnAdder(new SimulationConfig(false, 1));
+  }
+
+  private static void compareOnAdder(SimulationConfig config) {
+    Adder adder = new Adder();
+    Netlist nl = Netlist.compile(adder.circuit);
+
+    for (int parts : new int[] { 1, 2, 4 }) {
+      NetlistSimulator reference = new NetlistSimulator(nl, config);
+      try (PartitionedSimulator partitioned = new PartitionedSimulator(nl, config, parts)) {
+        assertEquals(parts, partitioned.getPartitionCount());
+        Random random = new Random(parts);
+
+        for (int v = 0; v < VECTORS; v++) {
+          // The last vector is all ones plus one, so a carry ripples through every bit
+          boolean ripple = v == VECTORS - 1;
+          BigInteger a = BigInteger.ZERO;
+          BigInteger b = BigInteger.ZERO;
+          for (int i = 0; i < BITS; i++) {
+            boolean ai = ripple || random.nextBoolean();
+            boolean bi = ripple ? i == 0 : random.nextBoolean();
+            a = ai ? a.setBit(i) : a;
+            b = bi ? b.setBit(i) : b;
+            reference.setSwitch(adder.a[i], ai);
+            reference.setSwitch(adder.b[i], bi);
+            partitioned.setSwitch(adder.a[i], ai);
+            partitioned.setSwitch(adder.b[i], bi);
+          }
+
+          String where = parts + " partitions, vector " + v;
+          RunResult expected = reference.runUntilStable(LIMIT);
+          RunResult actual = partitioned.runUntilStable(LIMIT);
+          assertTrue(expected.stable(), where);
+          assertTrue(actual.stable(), where);
+          assertEquals(expected.ticks(), actual.ticks(), where);
+          assertEquals(reference.getTick(), partitioned.getTick(), where);
+
+          BigInteger sum = BigInteger.ZERO;
+          for (int i = 0; i <= BITS; i++) {
+            boolean bit = reference.getInput(adder.sum[i], 0);
+            assertEquals(bit, partitioned.getInput(adder.sum[i], 0), where + ", bit " + i);
+            sum = bit ? sum.setBit(i) : sum;
+          }
+          assertEquals(a.add(b), sum, where);
+        }
+      }
+    }
+  }
+
+  // Ripple-carry adder a + b -> sum, with the carry out as sum[BITS]
+  private static final class Adder {
+    final Circuit circuit = new Circuit();
+    final Switch[] a = new Switch[BITS];
+    final Switch[] b = new Switch[BITS];
+    final OutputProbe[] sum = new OutputProbe[BITS + 1];
+
+    Adder() {
+      Component carry = null;
+      for (int i = 0; i < BITS; i++) {
+        a[i] = add(new Switch("A" + i));
+        b[i] = add(new Switch("B" + i));
+        XorGate half = add(new XorGate("XOR"));
+        AndGate generate = add(new AndGate("AND"));
+        circuit.addConnection(a[i], half, 0);
+        circuit.addConnection(b[i], half, 1);
+        circuit.addConnection(a[i], generate, 0);
+        circuit.addConnection(b[i], generate, 1);
+        sum[i] = add(new OutputProbe("S" + i));
+
+        if (carry == null) {
+          circuit.addConnection(half, sum[i], 0);
+          carry = generate;
+          continue;
+        }
+        XorGate full = add(new XorGate("XOR"));
+        AndGate propagate = add(new AndGate("AND"));
+        OrGate carryOut = add(new OrGate("OR"));
+        circuit.addConnection(half, full, 0);
+        circuit.addConnection(carry, full, 1);
+        circuit.addConnection(half, propagate, 0);
+        circuit.addConnection(carry, propagate, 1);
+        circuit.addConnection(generate, carryOut, 0);
+        circuit.addConnection(propagate, carryOut, 1);
+        circuit.addConnection(full, sum[i], 0);
+        carry = carryOut;
+      }
+      sum[BITS] = add(new OutputProbe("COUT"));
+      circuit.addConnection(carry, sum[BITS], 0);
+    }
+
+    private <T extends Component> T add(T c) {
+      circuit.addComponent(c);
+      return c;
+    }
+  }
+}
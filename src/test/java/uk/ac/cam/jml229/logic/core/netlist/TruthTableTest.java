@@ -0,0 +1,146 @@
+package uk.ac.cam.jml229.logic.core.netlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.gates.AndGate;
+import uk.ac.cam.jml229.logic.components.gates.OrGate;
+import uk.ac.cam.jml229.logic.components.gates.XorGate;
+import uk.ac.cam.jml229.logic.components.io.OutputProbe;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.core.Circuit;
+
+class TruthTableTest {
+
+  private static final String FULL_ADDER_CSV = """
+      A0,B0,CIN,S0,COUT
+      0,0,0,0,0
+      1,0,0,1,0
+      0,1,0,1,0
+      1,1,0,0,1
+      0,0,1,1,0
+      1,0,1,0,1
+      0,1,1,0,1
+      1,1,1,1,1
+      """;
+
+  @Test
+  void tabulatesFullAdder() {
+    TruthTable tt = TruthTable.of(new Adder(1).circuit);
+
+    assertEquals(List.of("A0", "B0", "CIN"), tt.getInputNames());
+    assertEquals(List.of("S0", "COUT"), tt.getOutputNames());
+    assertEquals(8, tt.getRowCount());
+    assertTrue(tt.isSettled());
+    for (long row = 0; row < 8; row++) {
+      long ones = Long.bitCount(row);
+      assertEquals(ones % 2 == 1, tt.get(row, 0), "sum, row " + row);
+      assertEquals(ones >= 2, tt.get(row, 1), "carry, row " + row);
+    }
+  }
+
+  @Test
+  void writesFullAdderCsv() throws IOException {
+    StringWriter out = new StringWriter();
+    TruthTable.of(new Adder(1).circuit).writeCsv(out);
+    assertEquals(FULL_ADDER_CSV, out.toString());
+  }
+
+  @Test
+  void generateSplitsWideTablesAcrossTasks() {
+    // 13 inputs is 128 blocks of 64 rows, several tasks' worth
+    int bits = 6;
+    Adder adder = new Adder(bits);
+    Netlist nl = Netlist.compile(adder.circuit);
+    int[] inGates = adder.inputs.stream().mapToInt(nl::indexOf).toArray();
+    int[] outGates = adder.outputs.stream().mapToInt(nl::indexOf).toArray();
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    TruthTable tt;
+    try {
+      tt = TruthTable.generate(nl, inGates, outGates, names(adder.inputs), names(adder.outputs), pool);
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals(1L << (2 * bits + 1), tt.getRowCount());
+    assertTrue(tt.isSettled());
+    long mask = (1L << bits) - 1;
+    for (long row = 0; row < tt.getRowCount(); row++) {
+      long a = row & mask;
+      long b = (row >>> bits) & mask;
+      long carryIn = row >>> (2 * bits);
+      assertEquals(a + b + carryIn, tt.getRow(row), "row " + row);
+    }
+  }
+
+  private static List<String> names(List<? extends Component> components) {
+    return components.stream().map(Component::getName).toList();
+  }
+
+  // Ripple-carry adder: inputs A0.., B0.., CIN top to bottom; outputs S0.., COUT
+  private static final class Adder {
+    final Circuit circuit = new Circuit();
+    final List<Switch> inputs = new ArrayList<>();
+    final List<OutputProbe> outputs = new ArrayList<>();
+
+    Adder(int bits) {
+      Switch[] a = new Switch[bits];
+      Switch[] b = new Switch[bits];
+      for (int i = 0; i < bits; i++)
+        a[i] = input("A" + i);
+      for (int i = 0; i < bits; i++)
+        b[i] = input("B" + i);
+      Component carry = input("CIN");
+
+      for (int i = 0; i < bits; i++) {
+        XorGate half = add(new XorGate("XOR"));
+        XorGate sum = add(new XorGate("XOR"));
+        AndGate generate = add(new AndGate("AND"));
+        AndGate propagate = add(new AndGate("AND"));
+        OrGate carryOut = add(new OrGate("OR"));
+        circuit.addConnection(a[i], half, 0);
+        circuit.addConnection(b[i], half, 1);
+        circuit.addConnection(half, sum, 0);
+        circuit.addConnection(carry, sum, 1);
+        circuit.addConnection(a[i], generate, 0);
+        circuit.addConnection(b[i], generate, 1);
+        circuit.addConnection(half, propagate, 0);
+        circuit.addConnection(carry, propagate, 1);
+        circuit.addConnection(generate, carryOut, 0);
+        circuit.addConnection(propagate, carryOut, 1);
+        circuit.addConnection(sum, output("S" + i), 0);
+        carry = carryOut;
+      }
+      circuit.addConnection(carry, output("COUT"), 0);
+    }
+
+    private Switch input(String name) {
+      Switch s = add(new Switch(name));
+      s.setPosition(0, inputs.size() * 10);
+      inputs.add(s);
+      return s;
+    }
+
+    private OutputProbe output(String name) {
+      OutputProbe p = add(new OutputProbe(name));
+      p.setPosition(100, outputs.size() * 10);
+      outputs.add(p);
+      return p;
+    }
+
+    private <T extends Component> T add(T c) {
+      circuit.addComponent(c);
+      return c;
+    }
+  }
+}
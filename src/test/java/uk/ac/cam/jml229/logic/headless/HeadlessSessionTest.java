@@ -0,0 +1,158 @@
+package uk.ac.cam.jml229.logic.headless;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.CustomComponent;
+import uk.ac.cam.jml229.logic.components.gates.AndGate;
+import uk.ac.cam.jml229.logic.components.gates.NotGate;
+import uk.ac.cam.jml229.logic.components.gates.OrGate;
+import uk.ac.cam.jml229.logic.components.gates.XorGate;
+import uk.ac.cam.jml229.logic.components.io.OutputProbe;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.components.seq.Clock;
+import uk.ac.cam.jml229.logic.components.seq.TFlipFlop;
+import uk.ac.cam.jml229.logic.core.Circuit;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
+import uk.ac.cam.jml229.logic.core.Simulator.RunResult;
+import uk.ac.cam.jml229.logic.headless.HeadlessSession.Engine;
+import uk.ac.cam.jml229.logic.io.StorageManager;
+
+class HeadlessSessionTest {
+
+  private static final SimulationConfig DELAYS_OFF = new SimulationConfig(false, 1);
+
+  @Test
+  void loadUsesTheGivenConfig() throws IOException {
+    File file = Files.createTempFile("headless", ".logik").toFile();
+    try {
+      StorageManager.save(file, invertingChip(), null);
+
+      // The chip's pins, its three gates and both probes each take a gate delay
+      long immediate = ticksToInvert(file, DELAYS_OFF);
+      long delayed = ticksToInvert(file, new SimulationConfig(true, 5));
+      assertEquals(6 * 5, delayed - immediate);
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void compiledEnginesMatchObjectEngine() {
+    SimulationConfig config = new SimulationConfig(true, 2);
+    for (Engine engine : new Engine[] { Engine.NETLIST, Engine.PARTITIONED }) {
+      HeadlessSession object = new HeadlessSession(adderAndCounter(), config, Engine.OBJECT);
+      try (HeadlessSession compiled = new HeadlessSession(adderAndCounter(), config, engine, 2)) {
+        Random random = new Random(1);
+        for (int step = 0; step < 50; step++) {
+          for (String name : object.getSwitchNames()) {
+            boolean on = random.nextBoolean();
+            object.set(name, on);
+            compiled.set(name, on);
+          }
+          if (step % 3 == 0) {
+            object.tickClocks();
+            compiled.tickClocks();
+          }
+          String where = engine + " step " + step;
+          assertEquals(object.run(1000).stable(), compiled.run(1000).stable(), where);
+          assertEquals(object.getTick(), compiled.getTick(), where);
+          for (String probe : object.getProbeNames())
+            assertEquals(object.read(probe), compiled.read(probe), probe + ", " + where);
+        }
+      }
+    }
+  }
+
+  // Loads the file, then times how long OUT takes to follow IN turning off
+  private static long ticksToInvert(File file, SimulationConfig config) throws IOException {
+    HeadlessSession session = HeadlessSession.load(file, config);
+    assertEquals(config, session.getSimulator().getConfig());
+    assertTrue(session.run(1000).stable());
+    assertFalse(session.read("OUT"));
+
+    long start = session.getTick();
+    session.set("IN", false);
+    assertTrue(session.run(1000).stable());
+    assertTrue(session.read("OUT"));
+    return session.getTick() - start;
+  }
+
+  // IN (on) -> chip (in -> NOT -> NOT -> NOT -> out) -> OUT
+  private static Circuit invertingChip() {
+    Circuit template = new Circuit();
+    Switch in = new Switch("in");
+    OutputProbe out = new OutputProbe("out");
+    template.addComponent(in);
+    template.addComponent(out);
+    NotGate previous = null;
+    for (int i = 0; i < 3; i++) {
+      NotGate not = new NotGate("NOT");
+      template.addComponent(not);
+      if (previous == null)
+        template.addConnection(in, not, 0);
+      else
+        template.addConnection(previous, not, 0);
+      previous = not;
+    }
+    template.addConnection(previous, out, 0);
+
+    Circuit circuit = new Circuit();
+    Switch input = new Switch("IN");
+    input.toggle(true);
+    CustomComponent chip = new CustomComponent("INV3", template);
+    OutputProbe output = new OutputProbe("OUT");
+    circuit.addComponent(input);
+    circuit.addComponent(chip);
+    circuit.addComponent(output);
+    circuit.addConnection(input, chip, 0);
+    circuit.addConnection(chip, 0, output, 0);
+    return circuit;
+  }
+
+  // Full adder A + B + Cin -> Sum, Cout, and a T flip-flop Q toggled by CLK when A is on
+  private static Circuit adderAndCounter() {
+    Circuit circuit = new Circuit();
+    Switch a = new Switch("A");
+    Switch b = new Switch("B");
+    Switch cin = new Switch("Cin");
+    XorGate half = new XorGate("XOR");
+    XorGate sum = new XorGate("XOR");
+    AndGate carryIn = new AndGate("AND");
+    AndGate carryAB = new AndGate("AND");
+    OrGate cout = new OrGate("OR");
+    Clock clk = new Clock("CLK");
+    TFlipFlop ff = new TFlipFlop("T");
+    OutputProbe sumOut = new OutputProbe("Sum");
+    OutputProbe coutOut = new OutputProbe("Cout");
+    OutputProbe q = new OutputProbe("Q");
+    for (Component c : new Component[] { a, b, cin, half, sum, carryIn, carryAB, cout, clk, ff, sumOut, coutOut, q })
+      circuit.addComponent(c);
+
+    circuit.addConnection(a, half, 0);
+    circuit.addConnection(b, half, 1);
+    circuit.addConnection(half, sum, 0);
+    circuit.addConnection(cin, sum, 1);
+    circuit.addConnection(half, carryIn, 0);
+    circuit.addConnection(cin, carryIn, 1);
+    circuit.addConnection(a, carryAB, 0);
+    circuit.addConnection(b, carryAB, 1);
+    circuit.addConnection(carryIn, cout, 0);
+    circuit.addConnection(carryAB, cout, 1);
+    circuit.addConnection(sum, sumOut, 0);
+    circuit.addConnection(cout, coutOut, 0);
+    circuit.addConnection(a, ff, 0);
+    circuit.addConnection(clk, ff, 1);
+    circuit.addConnection(ff, 0, q, 0);
+    return circuit;
+  }
+}
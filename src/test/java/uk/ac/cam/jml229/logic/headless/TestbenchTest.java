@@ -0,0 +1,134 @@
+package uk.ac.cam.jml229.logic.headless;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.cam.jml229.logic.components.Component;
+import uk.ac.cam.jml229.logic.components.gates.AndGate;
+import uk.ac.cam.jml229.logic.components.gates.OrGate;
+import uk.ac.cam.jml229.logic.components.gates.XorGate;
+import uk.ac.cam.jml229.logic.components.io.OutputProbe;
+import uk.ac.cam.jml229.logic.components.io.Switch;
+import uk.ac.cam.jml229.logic.core.Circuit;
+import uk.ac.cam.jml229.logic.core.SimulationConfig;
+import uk.ac.cam.jml229.logic.headless.Testbench.Mismatch;
+import uk.ac.cam.jml229.logic.headless.Testbench.Report;
+
+class TestbenchTest {
+
+  private static final SimulationConfig DELAYS_ON = new SimulationConfig(true, 2);
+  private static final long SETTLE_LIMIT = 1000;
+
+  private static final String FULL_ADDER = """
+      # Every row of a full adder
+      INPUTS A B Cin
+      OUTPUTS Sum Cout
+      000|00
+      100|10
+      010|10
+      110|01
+      0 0 1 | 1 0
+      101|01
+      011|01
+      111|11
+      +5 --0 | x 1   # keep A and B, drop Cin
+      """;
+
+  @Test
+  void passingRunCountsEveryVector() throws IOException {
+    HeadlessSession session = new HeadlessSession(fullAdder(), DELAYS_ON);
+    List<Mismatch> mismatches = new ArrayList<>();
+
+    Report r = new Testbench(session, SETTLE_LIMIT).run(new StringReader(FULL_ADDER), mismatches::add);
+
+    assertTrue(r.passed());
+    assertEquals(9, r.vectors());
+    assertEquals(0, r.failedVectors());
+    assertEquals(0, r.unsettled());
+    assertEquals(session.getTick(), r.ticks());
+    assertTrue(mismatches.isEmpty());
+  }
+
+  @Test
+  void mismatchReportsLineAndTick() throws IOException {
+    HeadlessSession session = new HeadlessSession(fullAdder(), DELAYS_ON);
+    List<Mismatch> mismatches = new ArrayList<>();
+    String stimulus = """
+        INPUTS A B Cin
+        OUTPUTS Sum Cout
+        000|00
+        @100 110|00
+        """;
+
+    Report r = new Testbench(session, SETTLE_LIMIT).run(new StringReader(stimulus), mismatches::add);
+
+    assertFalse(r.passed());
+    assertEquals(2, r.vectors());
+    assertEquals(1, r.failedVectors());
+    assertEquals(1, r.mismatches());
+    assertEquals(1, mismatches.size());
+    Mismatch m = mismatches.get(0);
+    assertEquals(4, m.line());
+    assertEquals("Cout", m.probe());
+    assertFalse(m.expected());
+    assertTrue(m.actual());
+    // Read once the vector driven at tick 100 has settled
+    assertTrue(m.tick() > 100);
+    assertEquals(session.getTick(), m.tick());
+  }
+
+  @Test
+  void rejectsTickInThePast() {
+    HeadlessSession session = new HeadlessSession(fullAdder(), DELAYS_ON);
+    String stimulus = """
+        INPUTS A
+        @50 1
+        @10 0
+        """;
+
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> new Testbench(session, SETTLE_LIMIT).run(new StringReader(stimulus), m -> {
+        }));
+    assertTrue(e.getMessage().startsWith("line 3: Tick 10 is already past"), e.getMessage());
+  }
+
+  // A + B + Cin -> Sum, Cout
+  private static Circuit fullAdder() {
+    Circuit circuit = new Circuit();
+    Switch a = new Switch("A");
+    Switch b = new Switch("B");
+    Switch cin = new Switch("Cin");
+    XorGate half = new XorGate("XOR");
+    XorGate sum = new XorGate("XOR");
+    AndGate carryIn = new AndGate("AND");
+    AndGate carryAB = new AndGate("AND");
+    OrGate cout = new OrGate("OR");
+    OutputProbe sumOut = new OutputProbe("Sum");
+    OutputProbe coutOut = new OutputProbe("Cout");
+    for (Component c : new Component[] { a, b, cin, half, sum, carryIn, carryAB, cout, sumOut, coutOut })
+      circuit.addComponent(c);
+
+    circuit.addConnection(a, half, 0);
+    circuit.addConnection(b, half, 1);
+    circuit.addConnection(half, sum, 0);
+    circuit.addConnection(cin, sum, 1);
+    circuit.addConnection(half, carryIn, 0);
+    circuit.addConnection(cin, carryIn, 1);
+    circuit.addConnection(a, carryAB, 0);
+    circuit.addConnection(b, carryAB, 1);
+    circuit.addConnection(carryIn, cout, 0);
+    circuit.addConnection(carryAB, cout, 1);
+    circuit.addConnection(sum, sumOut, 0);
+    circuit.addConnection(cout, coutOut, 0);
+    return circuit;
+  }
+}